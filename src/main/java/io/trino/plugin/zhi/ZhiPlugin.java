@@ -16,8 +16,23 @@ package io.trino.plugin.zhi;
 
 import com.google.common.collect.ImmutableSet;
 import io.trino.plugin.zhi.funnel.Funnel;
+import io.trino.plugin.zhi.funnel.FunnelBy;
+import io.trino.plugin.zhi.funnel.FunnelDetail;
+import io.trino.plugin.zhi.funnel.FunnelDetailMerge;
+import io.trino.plugin.zhi.funnel.FunnelEval;
 import io.trino.plugin.zhi.funnel.FunnelMerge;
+import io.trino.plugin.zhi.funnel.FunnelStateAggregation;
+import io.trino.plugin.zhi.funnel.FunnelStateMerge;
+import io.trino.plugin.zhi.funnel.FunnelStateResult;
+import io.trino.plugin.zhi.funnel.MultiFunnel;
+import io.trino.plugin.zhi.funnel.OrderedFunnel;
+import io.trino.plugin.zhi.funnel.Retention;
+import io.trino.plugin.zhi.funnel.RetentionMerge;
 import io.trino.plugin.zhi.word.WordCountFunction;
+import io.trino.plugin.zhi.word.WordCountTopKFunction;
+import io.trino.plugin.zhi.word.WordSketchEstimateFunction;
+import io.trino.plugin.zhi.word.WordSketchFunction;
+import io.trino.plugin.zhi.word.WordSketchMergeFunction;
 import io.trino.plugin.zhi.word.WordTokenizeFunction;
 import io.trino.spi.Plugin;
 import java.util.Set;
@@ -30,7 +45,22 @@ public class ZhiPlugin
         .add(WordTokenizeFunction.class)
         .add(Funnel.class)
         .add(FunnelMerge.class)
+        .add(OrderedFunnel.class)
+        .add(FunnelBy.class)
+        .add(MultiFunnel.class)
+        .add(FunnelStateAggregation.class)
+        .add(FunnelStateMerge.class)
+        .add(FunnelStateResult.class)
+        .add(FunnelEval.class)
+        .add(FunnelDetail.class)
+        .add(FunnelDetailMerge.class)
+        .add(Retention.class)
+        .add(RetentionMerge.class)
         .add(WordCountFunction.class)
+        .add(WordCountTopKFunction.class)
+        .add(WordSketchFunction.class)
+        .add(WordSketchMergeFunction.class)
+        .add(WordSketchEstimateFunction.class)
         .build();
   }
 }
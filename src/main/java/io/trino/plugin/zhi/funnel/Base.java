@@ -14,22 +14,17 @@
 
 package io.trino.plugin.zhi.funnel;
 
-import static io.trino.spi.type.TypeUtils.readNativeValue;
-import static io.trino.spi.type.VarcharType.VARCHAR;
+public class Base {
+  // 时间统一换算成微秒保存，便于排序和差值编码
+  private static final double TICKS_PER_SECOND = 1_000_000;
 
-import io.airlift.slice.Slice;
-import io.airlift.slice.Slices;
-import io.trino.spi.block.Block;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+  public static long toTicks(double seconds) {
+    return Math.round(seconds * TICKS_PER_SECOND);
+  }
 
-public class Base {
-  // 漏斗事件和索引关系: { events: { event index, ... } ... }
-  public static Map<Slice, Map<Slice, Byte>> event_pos_dict = new HashMap<>();
-  public static Map<String, Integer> stepMap = new HashMap<>();
+  public static double toSeconds(long ticks) {
+    return ticks / TICKS_PER_SECOND;
+  }
 
   public static byte intToByte(int x) {
     return (byte) x;
@@ -38,38 +33,4 @@ public class Base {
   public static int byteToInt(byte b) {
     return b & 0xFF;
   }
-
-  // v2
-  public static void setFunnelSteps(Block... steps) {
-    // 转换成倒排索引
-    // {eventName -> 1, eventName2 -> 1, eventName3 -> 2}
-    int i = 0;
-    for (Block step : steps) {
-      int positionCount = step.getPositionCount();
-      for (int x = 0; x < positionCount; x++) {
-        Slice stepItem = (Slice) readNativeValue(VARCHAR, step, x);
-        assert stepItem != null;
-        String stepItemString = stepItem.toStringUtf8();
-        stepMap.put(stepItemString, i);
-      }
-      ++i;
-    }
-  }
-
-  // v1
-  public static void init_events(Slice events) {
-    try {
-      List<String> fs =
-          Arrays.asList(new String(events.getBytes(), StandardCharsets.UTF_8).split(","));
-
-      Map<Slice, Byte> pos_dict = new HashMap<>();
-
-      for (int i = 0; i < fs.size(); ++i) {
-        pos_dict.put(Slices.utf8Slice(fs.get(i)), intToByte(i));
-      }
-      event_pos_dict.put(events, pos_dict);
-    } catch (ArrayIndexOutOfBoundsException e) {
-      System.out.println(e);
-    }
-  }
 }
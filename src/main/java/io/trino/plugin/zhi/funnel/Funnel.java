@@ -16,8 +16,8 @@ package io.trino.plugin.zhi.funnel;
 
 
 import io.airlift.slice.Slice;
-import io.airlift.slice.Slices;
-import io.trino.plugin.zhi.state.SliceState;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.plugin.zhi.state.FunnelState;
 import io.trino.spi.block.Block;
 import io.trino.spi.block.BlockBuilder;
 import io.trino.spi.function.AggregationFunction;
@@ -27,194 +27,163 @@ import io.trino.spi.function.OutputFunction;
 import io.trino.spi.function.SqlType;
 import io.trino.spi.type.BigintType;
 import io.trino.spi.type.StandardTypes;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @AggregationFunction("funnel")
 public class Funnel extends Base {
-  private static final int COUNT_FLAG_LENGTH = 8 + 4;
-  // 设置事件所占的位数,时间长和事件下标
-  private static final int COUNT_ONE_LENGTH = 8 + 4;
+  private static final String TIMESTAMP_MILLIS = StandardTypes.TIMESTAMP + "(3)";
+  private static final long MICROSECONDS_PER_MILLISECOND = 1_000;
+  // 事件数达到压缩阈值时重新计算深度并压缩事件列表，压缩后阈值设为剩余事件数的两倍，
+  // 总开销和直接排序同一个量级
+  private static final int COMPACTION_MIN_SIZE = 64;
+  // 单个分组最多保存的事件数，压缩后仍然超过时只保留最近的一个起始事件，结果退化为下界
+  private static final int MAX_EVENTS = Integer.getInteger("zhi.funnel.max-events", 1 << 20);
 
   @CombineFunction
   public static void combine(
-      SliceState state1,
-      SliceState state2
+      FunnelState state1,
+      FunnelState state2
   ) {
-    Slice slice1 = state1.getSlice();
-    Slice slice2 = state2.getSlice();
+    if (state2.isNull()) {
+      return;
+    }
 
-    if (slice2 == null) {
+    if (state1.isNull()) {
+      state1.init(state2.getWindow(), state2.getStepCount(), state2.getMode());
+    }
+    state1.setDepth(Math.max(state1.getDepth(), state2.getDepth()));
+    if (isSaturated(state1)) {
+      state1.clear();
       return;
     }
+    mergeEvents(state1, state2);
+    compactIfNeeded(state1);
+  }
 
-    if (slice1 == null) {
-      state1.setSlice(slice2);
+  // 把 state2 的事件合并到 state1 中，不做压缩
+  static void mergeEvents(FunnelState state1, FunnelState state2) {
+    long[] events = state2.getEvents();
+    int size = state2.size();
+    int currentSize = state1.size();
+    // 两边都是有序的分段（序列化时已经排好序）时线性归并，最终阶段不需要再整体排序；
+    // 另一段整体在后面时直接追加，仍然有序
+    if (currentSize > 0 && size > 0 && state1.isSorted() && state2.isSorted()
+        && events[0] < state1.getLastEvent()) {
+      long[] merged = FunnelEngine.mergeSorted(state1.getEvents(), currentSize, events, size);
+      state1.setSortedEvents(merged, merged.length);
     } else {
-      int l1 = slice1.length();
-      int l2 = slice2.length();
-      Slice newSlice = Slices.allocate(l1 + l2 - COUNT_FLAG_LENGTH);
-      newSlice.setBytes(0, slice1.getBytes());
-      // 截取长度数据
-      newSlice.setBytes(l1, slice2.getBytes(), COUNT_FLAG_LENGTH, l2 - COUNT_FLAG_LENGTH);
-      state1.setSlice(newSlice);
+      for (int i = 0; i < size; i++) {
+        state1.add(events[i]);
+      }
     }
   }
 
   @OutputFunction(StandardTypes.BIGINT)
-  public static void output(SliceState state, BlockBuilder out) {
-    // 获取状态数据
-    Slice slice = state.getSlice();
-
-    if (slice == null) {
+  public static void output(FunnelState state, BlockBuilder out) {
+    if (state.isNull()) {
       out.appendNull();
       return;
     }
 
-    boolean is_a = false;
-    List<Double> time_array = new ArrayList<>();
-    Map<Double, Integer> timeEventMap = new HashMap<>();
-
-    int eventSize = slice.getInt(8);
+    BigintType.BIGINT.writeLong(out, depth(state));
+  }
 
-    if (!is_a && eventSize == 0) {
-      is_a = true;
+  static int depth(FunnelState state) {
+    if (state.getMode() != FunnelMode.DEFAULT) {
+      state.sort();
+      return FunnelEngine.maxDepthStrictOfSorted(state.getEvents(), state.size(), state.getWindow(),
+          state.getStepCount(), state.getMode());
+    }
+    if (isSaturated(state)) {
+      return state.getDepth();
     }
+    state.sort();
+    int depth = FunnelEngine.maxDepthOfSorted(state.getEvents(), state.size(), state.getWindow(),
+        state.getStepCount());
+    return Math.max(state.getDepth(), depth);
+  }
 
-    for (int index = COUNT_FLAG_LENGTH; index < slice.length(); index += COUNT_ONE_LENGTH) {
-      double timestamp = slice.getDouble(index);
-      byte event_b = slice.getByte(index + 8);
+  // 已经走完所有步骤，之后的事件不会再改变结果
+  private static boolean isSaturated(FunnelState state) {
+    return state.getDepth() >= state.getStepCount();
+  }
 
-      time_array.add(timestamp);
-      timeEventMap.put(timestamp, (int) event_b);
+  private static void compactIfNeeded(FunnelState state) {
+    // 严格模式下遇到不满足条件的事件会停止，结果不随事件增加而单调变大，不能压缩
+    int size = state.size();
+    if (state.getMode() != FunnelMode.DEFAULT
+        || size < Math.max(COMPACTION_MIN_SIZE, state.getCompactionThreshold())) {
+      return;
     }
-    if (is_a) {
-      out.writeInt(0);
-      out.closeEntry();
+    state.setDepth(depth(state));
+    if (isSaturated(state)) {
+      state.clear();
       return;
     }
-
-    Collections.sort(time_array);
-
-    double windows = slice.getDouble(0);
-    long maxEventIndex = 0;
-
-    List<double[]> temp = new ArrayList<>();
-
-    for (double timestamp : time_array) {
-      int event = timeEventMap.get(timestamp);
-      if (event == 0) {
-        double[] flag = {timestamp, event};
-        temp.add(flag);
-      } else {
-        for (int i = temp.size() - 1; i >= 0; --i) {
-          double[] flag = temp.get(i);
-          if (timestamp - flag[0] >= windows) {
-            break;
-          } else {
-            flag[1] = event;
-            if (maxEventIndex < event) {
-              maxEventIndex = event;
-            }
-          }
-        }
-
-        if ((maxEventIndex + 1) == eventSize) {
-          break;
-        }
-      }
+    // depth() 中已经排好序
+    long[] events = state.getEvents();
+    int compacted = FunnelEngine.compactSorted(events, size, state.getDepth());
+    if (compacted > MAX_EVENTS) {
+      compacted = FunnelEngine.keepLastStart(events, compacted);
     }
-    BigintType.BIGINT.writeLong(out, maxEventIndex + 1);
-    out.closeEntry();
+    state.setSortedEvents(events, compacted);
+    state.setCompactionThreshold((int) Math.min((long) compacted * 2, MAX_EVENTS + 1L));
   }
 
-  public static void inputBase(SliceState state, double eventTime, double windows, Slice event,
-                               Block... steps) {
-    Slice slice = state.getSlice();
-    if (stepMap.size() == 0) {
-      setFunnelSteps(steps);
+  private static void addEvent(FunnelState state, FunnelSteps funnelSteps, long eventTime,
+                               long windows, Slice event) {
+    addEvent(state, funnelSteps, eventTime, windows, event, FunnelMode.DEFAULT);
+  }
+
+  private static void addEvent(FunnelState state, FunnelSteps funnelSteps, long eventTime,
+                               long windows, Slice event, int mode) {
+    if (state.isNull()) {
+      state.init(windows, funnelSteps.stepCount(), mode);
     }
-    String actionString = event.toStringUtf8();
-    if (null == slice) {
-      // 开辟空间
-      slice = Slices.allocate(COUNT_FLAG_LENGTH + COUNT_ONE_LENGTH);
-      // 窗口期
-      slice.setDouble(0, (double) windows);
-      // 事件个数
-      slice.setInt(8, steps.length);
-
-      // 保存事件发生的时间和对应的索引号
-      // 事件对应索引
-      if (stepMap.get(actionString) != null) {
-        slice.setDouble(COUNT_FLAG_LENGTH, (double) eventTime);
-        slice.setByte(20, stepMap.get(actionString));
-      }
-      state.setSlice(slice);
-    } else {
-      // 拿到上一个 slice 的长度
-      // 新建 slice，并初始化，在上一个长度后面追加新的数据
-      if (stepMap.get(actionString) != null) {
-        int slice_len = slice.length();
-        Slice newSlice = Slices.allocate(slice_len + COUNT_ONE_LENGTH);
-
-        newSlice.setBytes(0, slice.getBytes());
-        newSlice.setDouble(slice_len, (double) eventTime);
-        newSlice.setByte(slice_len + 8, stepMap.get(actionString));
-
-        state.setSlice(newSlice);
-        // [win_size[8], event_size[4],event_time[8],event_idx[1],event_time[8],event_idx[1],event_time[8],event_idx[1]
-      }
+    if (isSaturated(state)) {
+      return;
+    }
+    // 保存事件发生的时间和对应的索引号
+    int eventIndex = funnelSteps.indexOf(event);
+    if (eventIndex < 0) {
+      return;
     }
+    state.add(FunnelEvents.encode(eventTime, eventIndex));
+    compactIfNeeded(state);
+  }
+
+  public static void inputBase(FunnelState state, double eventTime, double windows, Slice event,
+                               Block... steps) {
+    addEvent(state, FunnelSteps.of(steps), toTicks(eventTime), toTicks(windows), event);
+  }
+
+  // 时间和窗口期使用同一个单位，不做换算
+  public static void inputBase(FunnelState state, long eventTime, long windows, Slice event,
+                               Block... steps) {
+    addEvent(state, FunnelSteps.of(steps), eventTime, windows, event);
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
                            @SqlType(StandardTypes.VARCHAR) Slice events) {
-    Slice slice = state.getSlice();
-    if (!event_pos_dict.containsKey(events)) {
-      init_events(events);
-    }
-    if (null == slice) {
-      int event_size = event_pos_dict.get(events).size();
-      // 开辟空间
-      slice = Slices.allocate(COUNT_FLAG_LENGTH + COUNT_ONE_LENGTH);
-      // 窗口期
-      slice.setDouble(0, (double) windows);
-      // 事件个数
-      slice.setInt(8, event_pos_dict.get(events).size());
-
-      // 保存事件发生的时间和对应的索引号
-      // 事件对应索引
-      if (event_pos_dict.get(events).get(event) != null) {
-        slice.setDouble(COUNT_FLAG_LENGTH, (double) eventTime);
-        slice.setByte(20, event_pos_dict.get(events).get(event));
-      }
-      state.setSlice(slice);
-    } else {
-      // 拿到上一个 slice 的长度
-      // 新建 slice，并初始化，在上一个长度后面追加新的数据
-      if (event_pos_dict.get(events).get(event) != null) {
-        int slice_len = slice.length();
-        Slice newSlice = Slices.allocate(slice_len + COUNT_ONE_LENGTH);
-
-        newSlice.setBytes(0, slice.getBytes());
-        newSlice.setDouble(slice_len, (double) eventTime);
-        newSlice.setByte(slice_len + 8, event_pos_dict.get(events).get(event));
-
-        state.setSlice(newSlice);
-        // [win_size[8], event_size[4],event_time[8],event_idx[1],event_time[8],event_idx[1],event_time[8],event_idx[1]
-      }
-    }
+    addEvent(state, FunnelSteps.of(events), toTicks(eventTime), toTicks(windows), event);
   }
 
+  // 指定计算模式，取值见 FunnelMode
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events,
+                           @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addEvent(state, FunnelSteps.of(events), toTicks(eventTime), toTicks(windows), event, FunnelMode.parse(mode));
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -224,7 +193,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -235,7 +204,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -247,7 +216,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -260,7 +229,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -274,7 +243,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -289,7 +258,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -305,7 +274,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -322,7 +291,7 @@ public class Funnel extends Base {
   }
 
   @InputFunction
-  public static void input(SliceState state,
+  public static void input(FunnelState state,
                            @SqlType(StandardTypes.DOUBLE) double eventTime,
                            @SqlType(StandardTypes.DOUBLE) double windows,
                            @SqlType(StandardTypes.VARCHAR) Slice event,
@@ -338,4 +307,297 @@ public class Funnel extends Base {
                            @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
     inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
   }
+
+  // bigint 版本：时间为毫秒时间戳，窗口期为毫秒
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    addEvent(state, FunnelSteps.of(events), eventTime, windows, event);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events,
+                           @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addEvent(state, FunnelSteps.of(events), eventTime, windows, event, FunnelMode.parse(mode));
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    inputBase(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+
+  // timestamp(3) 版本：时间按微秒保存，窗口期为毫秒
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType(StandardTypes.VARCHAR) Slice events) {
+    addEvent(state, FunnelSteps.of(events), eventTime, windows * MICROSECONDS_PER_MILLISECOND, event);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType(StandardTypes.VARCHAR) Slice events,
+                                    @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addEvent(state, FunnelSteps.of(events), eventTime, windows * MICROSECONDS_PER_MILLISECOND, event,
+        FunnelMode.parse(mode));
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    inputBase(state, eventTime, windows * MICROSECONDS_PER_MILLISECOND, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
 }
@@ -0,0 +1,241 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelByEvents;
+import io.trino.plugin.zhi.state.FunnelByState;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 按维度分别计算漏斗深度，一次扫描得到每个维度值的 funnel 结果。
+ * 所有维度共用一个事件列表，每个事件记录维度编号，输出时再按维度拆开计算。
+ */
+@AggregationFunction("funnel_by")
+public class FunnelBy extends Base {
+  @CombineFunction
+  public static void combine(FunnelByState state1, FunnelByState state2) {
+    FunnelByEvents other = state2.get();
+    if (other == null) {
+      return;
+    }
+
+    FunnelByEvents events = state1.get();
+    if (events == null) {
+      events = new FunnelByEvents(other.getWindow(), other.getStepCount());
+      state1.set(events);
+    }
+    long before = events.getEstimatedSize();
+    events.addAll(other);
+    state1.addMemoryUsage(events.getEstimatedSize() - before);
+  }
+
+  @OutputFunction("map(" + StandardTypes.VARCHAR + "," + StandardTypes.BIGINT + ")")
+  public static void output(FunnelByState state, BlockBuilder out) {
+    FunnelByEvents events = state.get();
+    if (events == null) {
+      out.appendNull();
+      return;
+    }
+
+    int[] depths = FunnelEngine.maxDepths(events.getEvents(), events.getEventDimensions(), events.size(),
+        events.dimensionCount(), events.getWindow(), events.getStepCount());
+    BlockBuilder entry = out.beginBlockEntry();
+    for (int i = 0; i < depths.length; i++) {
+      VARCHAR.writeSlice(entry, events.getDimension(i));
+      BIGINT.writeLong(entry, depths[i]);
+    }
+    out.closeEntry();
+  }
+
+  private static void addEvent(FunnelByState state, FunnelSteps funnelSteps, Slice dimension,
+                               double eventTime, double windows, Slice event) {
+    FunnelByEvents events = state.get();
+    if (events == null) {
+      events = new FunnelByEvents(toTicks(windows), funnelSteps.stepCount());
+      state.set(events);
+    }
+    long before = events.getEstimatedSize();
+    // 没有命中任何步骤的维度也要出现在结果中，和按维度分组后调用 funnel 的结果一致
+    int dimensionId = events.dimensionId(dimension);
+    int eventIndex = funnelSteps.indexOf(event);
+    if (eventIndex >= 0) {
+      events.add(dimensionId, FunnelEvents.encode(toTicks(eventTime), eventIndex));
+    }
+    state.addMemoryUsage(events.getEstimatedSize() - before);
+  }
+
+  public static void inputBase(FunnelByState state, Slice dimension, double eventTime, double windows,
+                               Slice event, Block... steps) {
+    addEvent(state, FunnelSteps.of(steps), dimension, eventTime, windows, event);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    addEvent(state, FunnelSteps.of(events), dimension, eventTime, windows, event);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelByState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice dimension,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    inputBase(state, dimension, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.plugin.zhi.state.FunnelState;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 参数和 funnel 相同，在计算深度的同一次排序扫描中记录达到最大深度的链路，
+ * 返回深度以及每一步相对上一步的耗时（秒），链路的选取见 {@link FunnelEngine#chainElapsedOfSorted}。
+ * 需要保留每一步的事件，所以不做 funnel 中的压缩。
+ */
+@AggregationFunction("funnel_detail")
+public class FunnelDetail extends Base {
+  public static final String RESULT = "row(depth " + StandardTypes.BIGINT
+      + ",elapsed array(" + StandardTypes.DOUBLE + "))";
+
+  @CombineFunction
+  public static void combine(FunnelState state1, FunnelState state2) {
+    if (state2.isNull()) {
+      return;
+    }
+
+    if (state1.isNull()) {
+      state1.init(state2.getWindow(), state2.getStepCount(), FunnelMode.DEFAULT);
+    }
+    Funnel.mergeEvents(state1, state2);
+  }
+
+  @OutputFunction(RESULT)
+  public static void output(FunnelState state, BlockBuilder out) {
+    if (state.isNull()) {
+      out.appendNull();
+      return;
+    }
+
+    state.sort();
+    long[] elapsed = FunnelEngine.chainElapsedOfSorted(state.getEvents(), state.size(), state.getWindow(),
+        state.getStepCount());
+    BlockBuilder row = out.beginBlockEntry();
+    BIGINT.writeLong(row, elapsed.length + 1);
+    BlockBuilder array = row.beginBlockEntry();
+    for (long ticks : elapsed) {
+      if (ticks == FunnelEngine.NO_ELAPSED) {
+        array.appendNull();
+      } else {
+        DOUBLE.writeDouble(array, toSeconds(ticks));
+      }
+    }
+    row.closeEntry();
+    out.closeEntry();
+  }
+
+  private static void addEvent(FunnelState state, FunnelSteps funnelSteps, double eventTime,
+                               double windows, Slice event) {
+    if (state.isNull()) {
+      state.init(toTicks(windows), funnelSteps.stepCount(), FunnelMode.DEFAULT);
+    }
+    int eventIndex = funnelSteps.indexOf(event);
+    if (eventIndex >= 0) {
+      state.add(FunnelEvents.encode(toTicks(eventTime), eventIndex));
+    }
+  }
+
+  public static void inputBase(FunnelState state, double eventTime, double windows, Slice event,
+                               Block... steps) {
+    addEvent(state, FunnelSteps.of(steps), eventTime, windows, event);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    addEvent(state, FunnelSteps.of(events), eventTime, windows, event);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    inputBase(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+
+import io.trino.plugin.zhi.state.FunnelDetailMergeState;
+import io.trino.plugin.zhi.state.FunnelDetailStats;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 聚合 funnel_detail 的结果：第 j 个元素是第 j + 1 步相对上一步耗时的次数、总和（秒）以及固定分桶的直方图，
+ * 桶的划分见 {@link FunnelDetailStats#bucketOf}。
+ */
+@AggregationFunction("funnel_detail_merge")
+public class FunnelDetailMerge {
+  @InputFunction
+  public static void input(FunnelDetailMergeState state,
+                           @SqlType(FunnelDetail.RESULT) Block detail) {
+    if (detail.isNull(1)) {
+      return;
+    }
+    FunnelDetailStats stats = state.get();
+    if (stats == null) {
+      stats = new FunnelDetailStats();
+      state.set(stats);
+    }
+    long before = stats.getEstimatedSize();
+    Block elapsed = detail.getObject(1, Block.class);
+    for (int i = 0; i < elapsed.getPositionCount(); i++) {
+      if (!elapsed.isNull(i)) {
+        stats.add(i + 1, DOUBLE.getDouble(elapsed, i));
+      }
+    }
+    state.addMemoryUsage(stats.getEstimatedSize() - before);
+  }
+
+  @CombineFunction
+  public static void combine(FunnelDetailMergeState state, FunnelDetailMergeState otherState) {
+    FunnelDetailStats other = otherState.get();
+    if (other == null) {
+      return;
+    }
+
+    FunnelDetailStats stats = state.get();
+    if (stats == null) {
+      stats = new FunnelDetailStats();
+      state.set(stats);
+    }
+    long before = stats.getEstimatedSize();
+    stats.addAll(other);
+    state.addMemoryUsage(stats.getEstimatedSize() - before);
+  }
+
+  @OutputFunction("array(row(count " + StandardTypes.BIGINT + ",sum " + StandardTypes.DOUBLE
+      + ",histogram array(" + StandardTypes.BIGINT + ")))")
+  public static void output(FunnelDetailMergeState state, BlockBuilder out) {
+    FunnelDetailStats stats = state.get();
+    if (stats == null) {
+      out.appendNull();
+      return;
+    }
+
+    BlockBuilder array = out.beginBlockEntry();
+    for (int step = 1; step <= stats.stepCount(); step++) {
+      BlockBuilder row = array.beginBlockEntry();
+      BIGINT.writeLong(row, stats.getCount(step));
+      DOUBLE.writeDouble(row, stats.getSum(step));
+      BlockBuilder histogram = row.beginBlockEntry();
+      for (int bucket = 0; bucket < FunnelDetailStats.BUCKET_COUNT; bucket++) {
+        BIGINT.writeLong(histogram, stats.getHistogram(step, bucket));
+      }
+      row.closeEntry();
+      array.closeEntry();
+    }
+    out.closeEntry();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import io.trino.plugin.zhi.state.FunnelEvents;
+import java.util.Arrays;
+
+/**
+ * 漏斗深度计算：事件按 (时间, 步骤) 排序后单次扫描。
+ * 对每个非起始步骤的事件，只需要和它之前最近的一次起始事件比较，
+ * 更早的起始事件离它更远，不可能落在窗口内而最近的却不在。
+ */
+public class FunnelEngine {
+  // chainElapsedOfSorted 中没有找到的步骤
+  public static final long NO_ELAPSED = -1;
+
+  private FunnelEngine() {
+  }
+
+  /**
+   * 原地排序 events 的 [0, size) 部分并返回漏斗深度（1 ~ stepCount）。
+   */
+  public static int maxDepth(long[] events, int size, long window, int stepCount) {
+    Arrays.sort(events, 0, size);
+    return maxDepthOfSorted(events, size, window, stepCount);
+  }
+
+  /**
+   * events 的 [0, size) 部分已经有序时直接扫描。
+   */
+  public static int maxDepthOfSorted(long[] events, int size, long window, int stepCount) {
+    return maxDepthOfSorted(events, 0, size, window, stepCount);
+  }
+
+  /**
+   * events 的 [from, to) 部分已经有序时直接扫描。
+   */
+  public static int maxDepthOfSorted(long[] events, int from, int to, long window, int stepCount) {
+    int maxStep = 0;
+    boolean started = false;
+    long lastStart = 0;
+    for (int i = from; i < to; i++) {
+      long time = FunnelEvents.time(events[i]);
+      int step = FunnelEvents.step(events[i]);
+      if (step == 0) {
+        lastStart = time;
+        started = true;
+      } else if (started && step > maxStep && time - lastStart < window) {
+        maxStep = step;
+        if (maxStep + 1 == stepCount) {
+          break;
+        }
+      }
+    }
+    return maxStep + 1;
+  }
+
+  /**
+   * 严格模式（见 {@link FunnelMode}）下的漏斗深度，events 的 [0, size) 部分需要有序。
+   * 每一步保存一个槽位：链路的起始时间和达到这一步的时间。起始事件重置第 0 步，
+   * 第 j 步的事件只和第 j - 1 步的槽位比较，每个事件只更新 O(1) 个槽位，不需要回头扫描之前的起始事件。
+   * strict_order / strict_deduplication 条件不满足时停止扫描，返回已经达到的深度。
+   */
+  public static int maxDepthStrictOfSorted(long[] events, int size, long window, int stepCount, int mode) {
+    long[] starts = new long[stepCount];
+    long[] times = new long[stepCount];
+    boolean[] reached = new boolean[stepCount];
+    boolean started = false;
+    int maxStep = 0;
+    for (int i = 0; i < size; i++) {
+      long time = FunnelEvents.time(events[i]);
+      int step = FunnelEvents.step(events[i]);
+      if (step == 0) {
+        starts[0] = time;
+        times[0] = time;
+        reached[0] = true;
+        started = true;
+      } else if ((mode & FunnelMode.STRICT_DEDUPLICATION) != 0 && reached[step]) {
+        break;
+      } else if ((mode & FunnelMode.STRICT_ORDER) != 0 && started && !reached[step - 1]) {
+        break;
+      } else if (reached[step - 1]) {
+        long start = starts[step - 1];
+        boolean matched = time - start < window;
+        if ((mode & FunnelMode.STRICT_INCREASE) != 0) {
+          matched &= times[step - 1] < time;
+        }
+        if (matched) {
+          starts[step] = start;
+          times[step] = time;
+          reached[step] = true;
+          maxStep = Math.max(maxStep, step);
+          if (maxStep + 1 == stepCount) {
+            break;
+          }
+        }
+      }
+    }
+    return maxStep + 1;
+  }
+
+  /**
+   * 达到最大深度的第一条链路中每一步的耗时，events 的 [0, size) 部分需要有序。
+   * 链路从第一次达到最大深度时使用的起始事件开始，在窗口期内依次找每一步不早于上一步的第一个事件；
+   * 返回数组长度为深度 - 1，下标 j - 1 是第 j 步相对上一个找到的步骤的耗时，没有找到时为 NO_ELAPSED。
+   */
+  public static long[] chainElapsedOfSorted(long[] events, int size, long window, int stepCount) {
+    int maxStep = 0;
+    int lastStartIndex = -1;
+    int bestStartIndex = -1;
+    for (int i = 0; i < size; i++) {
+      long time = FunnelEvents.time(events[i]);
+      int step = FunnelEvents.step(events[i]);
+      if (step == 0) {
+        lastStartIndex = i;
+      } else if (lastStartIndex >= 0 && step > maxStep
+          && time - FunnelEvents.time(events[lastStartIndex]) < window) {
+        maxStep = step;
+        bestStartIndex = lastStartIndex;
+        if (maxStep + 1 == stepCount) {
+          break;
+        }
+      }
+    }
+
+    long[] elapsed = new long[maxStep];
+    if (maxStep == 0) {
+      return elapsed;
+    }
+    long start = FunnelEvents.time(events[bestStartIndex]);
+    int previousIndex = bestStartIndex;
+    for (int step = 1; step <= maxStep; step++) {
+      elapsed[step - 1] = NO_ELAPSED;
+      for (int i = previousIndex + 1; i < size && FunnelEvents.time(events[i]) - start < window; i++) {
+        if (FunnelEvents.step(events[i]) == step) {
+          elapsed[step - 1] = FunnelEvents.time(events[i]) - FunnelEvents.time(events[previousIndex]);
+          previousIndex = i;
+          break;
+        }
+      }
+    }
+    return elapsed;
+  }
+
+  /**
+   * 分维度计算漏斗深度：先按维度编号做计数排序，再对每个维度的事件各自排序扫描，
+   * 返回每个维度的深度，没有命中任何步骤的维度深度为 1。不修改输入数组。
+   */
+  public static int[] maxDepths(long[] events, int[] dimensionIds, int size, int dimensionCount,
+                                long window, int stepCount) {
+    int[] offsets = new int[dimensionCount + 1];
+    for (int i = 0; i < size; i++) {
+      offsets[dimensionIds[i] + 1]++;
+    }
+    for (int i = 0; i < dimensionCount; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    long[] grouped = new long[size];
+    int[] next = Arrays.copyOf(offsets, dimensionCount);
+    for (int i = 0; i < size; i++) {
+      grouped[next[dimensionIds[i]]++] = events[i];
+    }
+
+    int[] depths = new int[dimensionCount];
+    for (int i = 0; i < dimensionCount; i++) {
+      Arrays.sort(grouped, offsets[i], offsets[i + 1]);
+      depths[i] = maxDepthOfSorted(grouped, offsets[i], offsets[i + 1], window, stepCount);
+    }
+    return depths;
+  }
+
+  /**
+   * 原地压缩有序的事件列表，返回压缩后的长度。去掉重复的事件，以及步骤小于 depth 的非起始事件：
+   * 漏斗深度已经确认不低于 depth，这些事件不能再让结果变大。之后再加入的事件（包括乱序的）
+   * 都只会让深度变大，所以结果不受影响。
+   */
+  public static int compactSorted(long[] events, int size, int depth) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      long event = events[i];
+      if (kept > 0 && events[kept - 1] == event) {
+        continue;
+      }
+      int step = FunnelEvents.step(event);
+      if (step != 0 && step < depth) {
+        continue;
+      }
+      events[kept++] = event;
+    }
+    return kept;
+  }
+
+  /**
+   * 有损压缩：只保留最后一个起始事件，返回压缩后的长度。之前的事件对深度的贡献需要调用方先记下来，
+   * 之后的事件按时间顺序到达时结果不变，乱序到达时结果可能偏小。
+   */
+  public static int keepLastStart(long[] events, int size) {
+    for (int i = size - 1; i >= 0; i--) {
+      if (FunnelEvents.step(events[i]) == 0) {
+        events[0] = events[i];
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * 线性归并两个有序的事件列表。
+   */
+  public static long[] mergeSorted(long[] left, int leftSize, long[] right, int rightSize) {
+    long[] merged = new long[leftSize + rightSize];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < leftSize && j < rightSize) {
+      merged[k++] = left[i] <= right[j] ? left[i++] : right[j++];
+    }
+    while (i < leftSize) {
+      merged[k++] = left[i++];
+    }
+    while (j < rightSize) {
+      merged[k++] = right[j++];
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.ColumnarRow;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.ScalarFunction;
+import io.trino.spi.function.SqlNullable;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 对已经收集好的事件数组直接计算漏斗深度，不需要 UNNEST 之后再聚合。
+ * 直接读取数组的 Block，和 funnel 使用同样的排序扫描逻辑，结果等于对数组中的事件调用 funnel。
+ */
+public final class FunnelEval extends Base {
+  private static final String EVENTS = "array(row(" + StandardTypes.DOUBLE + "," + StandardTypes.VARCHAR + "))";
+
+  private FunnelEval() {
+  }
+
+  // 时间或事件为 null 的元素会被忽略，数组为空时返回 null，和 funnel 在没有输入行时一致
+  private static Long evaluate(Block array, double windows, FunnelSteps funnelSteps) {
+    int count = array.getPositionCount();
+    if (count == 0) {
+      return null;
+    }
+    // 一次取出两列，之后按下标读取，不为每个元素创建行对象；列中只包含非 null 的行
+    ColumnarRow rows = ColumnarRow.toColumnarRow(array);
+    Block times = rows.getField(0);
+    Block names = rows.getField(1);
+    long[] events = new long[count];
+    int size = 0;
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      if (rows.isNull(i)) {
+        continue;
+      }
+      int field = position++;
+      if (times.isNull(field) || names.isNull(field)) {
+        continue;
+      }
+      int eventIndex = funnelSteps.indexOf(VARCHAR.getSlice(names, field));
+      if (eventIndex >= 0) {
+        events[size++] = FunnelEvents.encode(toTicks(DOUBLE.getDouble(times, field)), eventIndex);
+      }
+    }
+    return (long) FunnelEngine.maxDepth(events, size, toTicks(windows), funnelSteps.stepCount());
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType(StandardTypes.VARCHAR) Slice events) {
+    return evaluate(array, windows, FunnelSteps.of(events));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5, s6));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5, s6, s7));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5, s6, s7, s8));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5, s6, s7, s8, s9));
+  }
+
+  @ScalarFunction("funnel_eval")
+  @Description("Returns the funnel depth of an array of (timestamp, event) rows")
+  @SqlNullable
+  @SqlType(StandardTypes.BIGINT)
+  public static Long funnelEval(@SqlType(EVENTS) Block array,
+                                @SqlType(StandardTypes.DOUBLE) double windows,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                                @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    return evaluate(array, windows, FunnelSteps.of(s1, s2, s3, s4, s5, s6, s7, s8, s9, s10));
+  }
+}
@@ -12,9 +12,13 @@
  * limitations under the License.
  */
 
+
 package io.trino.plugin.zhi.funnel;
 
-import io.trino.plugin.zhi.state.DoubleAndLongListState;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.trino.plugin.zhi.state.FunnelMergeState;
+import io.trino.spi.TrinoException;
 import io.trino.spi.block.BlockBuilder;
 import io.trino.spi.function.AggregationFunction;
 import io.trino.spi.function.CombineFunction;
@@ -23,61 +27,51 @@ import io.trino.spi.function.OutputFunction;
 import io.trino.spi.function.SqlType;
 import io.trino.spi.type.BigintType;
 import io.trino.spi.type.StandardTypes;
-import java.util.ArrayList;
-import java.util.List;
 
 
 @AggregationFunction("funnel_merge")
 public class FunnelMerge {
-  public static List<Long> buildList(Long size) {
-    List<Long> list = new ArrayList<>();
-    for (int i = 0; i < size; ++i) {
-      list.add(1L);
-    }
-
-    return list;
-  }
-
-  public static List<Long> sumList(List<Long> left, List<Long> right) {
-    List<Long> res = new ArrayList<>();
-    for (int i = 0; i < Math.max(left.size(), right.size()); ++i) {
-      long leftVal = i > left.size() - 1 ? 0 : left.get(i);
-      long rightRight = i > right.size() - 1 ? 0 : right.get(i);
-      res.add(leftVal + rightRight);
-    }
-
-    return res;
-  }
+  private static final int MAX_DEPTH = 10_000;
 
   @InputFunction
-  public static void input(DoubleAndLongListState state,
+  public static void input(FunnelMergeState state,
                            @SqlType(StandardTypes.BIGINT) long count) {
-    List<Long> list = buildList(count);
-    List<Long> latestList = state.getLongList();
-    List<Long> res = sumList(list, latestList);
-
-    state.setLongList(res);
+    if (count <= 0) {
+      return;
+    }
+    if (count > MAX_DEPTH) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+          "funnel depth must not be greater than " + MAX_DEPTH + ": " + count);
+    }
+    // 只记录深度出现的次数，输出时再展开
+    state.add((int) count, 1);
   }
 
   @CombineFunction
-  public static void combine(DoubleAndLongListState state, DoubleAndLongListState otherState) {
-    List<Long> left = state.getLongList();
-    List<Long> right = otherState.getLongList();
-
-    List<Long> res = sumList(left, right);
-
-    state.setLongList(res);
+  public static void combine(FunnelMergeState state, FunnelMergeState otherState) {
+    for (int depth = 1; depth <= otherState.getMaxDepth(); depth++) {
+      long count = otherState.getCount(depth);
+      if (count != 0) {
+        state.add(depth, count);
+      }
+    }
   }
 
   @OutputFunction("array(" + StandardTypes.BIGINT + ")")
-  public static void output(DoubleAndLongListState state, BlockBuilder out) {
-    List<Long> res = state.getLongList();
-    BlockBuilder block = out.beginBlockEntry();
+  public static void output(FunnelMergeState state, BlockBuilder out) {
+    // 第 i 个元素是深度 >= i 的次数，从最深处往前累加
+    int maxDepth = state.getMaxDepth();
+    long[] res = new long[maxDepth];
+    long sum = 0;
+    for (int depth = maxDepth; depth >= 1; depth--) {
+      sum += state.getCount(depth);
+      res[depth - 1] = sum;
+    }
 
+    BlockBuilder block = out.beginBlockEntry();
     for (long val : res) {
       BigintType.BIGINT.writeLong(block, val);
     }
-
     out.closeEntry();
   }
 }
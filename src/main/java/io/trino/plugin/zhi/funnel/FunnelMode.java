@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+
+/**
+ * funnel 的计算模式，多个模式用 `,` 分割，可以同时生效：
+ * <ul>
+ * <li>strict_order：已经开始的链路中，出现前一步还没有达到的步骤时停止</li>
+ * <li>strict_increase：每一步的时间必须严格大于前一步</li>
+ * <li>strict_deduplication：已经达到的步骤再次出现时停止</li>
+ * </ul>
+ */
+public final class FunnelMode {
+  public static final int DEFAULT = 0;
+  public static final int STRICT_ORDER = 1;
+  public static final int STRICT_INCREASE = 1 << 1;
+  public static final int STRICT_DEDUPLICATION = 1 << 2;
+
+  private static final Slice[] NAMES = {
+      Slices.utf8Slice("strict_order"),
+      Slices.utf8Slice("strict_increase"),
+      Slices.utf8Slice("strict_deduplication"),
+  };
+
+  private FunnelMode() {
+  }
+
+  // 逐字节比对，不创建字符串
+  public static int parse(Slice modes) {
+    int mode = DEFAULT;
+    int start = 0;
+    int length = modes.length();
+    for (int i = 0; i <= length; i++) {
+      if (i == length || modes.getByte(i) == ',') {
+        if (i > start) {
+          mode |= parseOne(modes, start, i - start);
+        }
+        start = i + 1;
+      }
+    }
+    return mode;
+  }
+
+  private static int parseOne(Slice modes, int offset, int length) {
+    for (int i = 0; i < NAMES.length; i++) {
+      if (NAMES[i].length() == length && modes.equals(offset, length, NAMES[i], 0, length)) {
+        return 1 << i;
+      }
+    }
+    throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+        "Unknown funnel mode: " + modes.slice(offset, length).toStringUtf8());
+  }
+}
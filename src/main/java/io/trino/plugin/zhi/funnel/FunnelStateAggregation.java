@@ -0,0 +1,471 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelState;
+import io.trino.plugin.zhi.state.FunnelStateCodec;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 参数和 funnel 相同，返回可以保存到表里的中间状态（格式见 {@link FunnelStateCodec}），
+ * 之后通过 funnel_state_merge 合并、funnel_state_result 计算深度，结果和直接调用 funnel 相同。
+ * 只能合并同一种时间类型、同一窗口期和步骤定义下生成的状态。
+ */
+@AggregationFunction("funnel_state")
+public class FunnelStateAggregation {
+  private static final String TIMESTAMP_MILLIS = StandardTypes.TIMESTAMP + "(3)";
+
+  @CombineFunction
+  public static void combine(FunnelState state1, FunnelState state2) {
+    // 保存下来的状态可能来自不同的查询，例如一个用毫秒、一个用微秒的时间，直接合并会得到错误的结果
+    if (!state1.isNull() && !state2.isNull()
+        && (state1.getWindow() != state2.getWindow() || state1.getStepCount() != state2.getStepCount()
+        || state1.getMode() != state2.getMode())) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, String.format(
+          "Cannot merge funnel states with different windows, steps or modes: (%d, %d, %d) and (%d, %d, %d)",
+          state1.getWindow(), state1.getStepCount(), state1.getMode(),
+          state2.getWindow(), state2.getStepCount(), state2.getMode()));
+    }
+    Funnel.combine(state1, state2);
+  }
+
+  @OutputFunction(StandardTypes.VARBINARY)
+  public static void output(FunnelState state, BlockBuilder out) {
+    if (state.isNull()) {
+      out.appendNull();
+      return;
+    }
+
+    VARBINARY.writeSlice(out, FunnelStateCodec.encode(state));
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    Funnel.input(state, eventTime, windows, event, events);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    Funnel.input(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    Funnel.input(state, eventTime, windows, event, events);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    Funnel.input(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BIGINT) long windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    Funnel.input(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType(StandardTypes.VARCHAR) Slice events) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, events);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(FunnelState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BIGINT) long windows,
+                                    @SqlType(StandardTypes.VARCHAR) Slice event,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                                    @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    Funnel.inputTimestamp(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelFactory;
+import io.trino.plugin.zhi.state.FunnelState;
+import io.trino.plugin.zhi.state.FunnelStateCodec;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 合并 funnel_state 保存的中间状态，例如把每天的状态合并成月度的状态，返回值格式不变。
+ */
+@AggregationFunction("funnel_state_merge")
+public class FunnelStateMerge {
+  // 解码用的临时状态，每个线程复用一个，避免每行都创建新的状态对象
+  private static final ThreadLocal<FunnelState> SCRATCH =
+      ThreadLocal.withInitial(() -> new FunnelFactory().createSingleState());
+
+  @InputFunction
+  public static void input(FunnelState state,
+                           @SqlType(StandardTypes.VARBINARY) Slice value) {
+    if (state.isNull()) {
+      // 分组的第一行直接解码到聚合状态中
+      FunnelStateCodec.decode(value, state);
+      return;
+    }
+
+    FunnelState other = SCRATCH.get();
+    FunnelStateCodec.decode(value, other);
+    FunnelStateAggregation.combine(state, other);
+    other.clear();
+  }
+
+  @CombineFunction
+  public static void combine(FunnelState state1, FunnelState state2) {
+    FunnelStateAggregation.combine(state1, state2);
+  }
+
+  @OutputFunction(StandardTypes.VARBINARY)
+  public static void output(FunnelState state, BlockBuilder out) {
+    if (state.isNull()) {
+      out.appendNull();
+      return;
+    }
+
+    VARBINARY.writeSlice(out, FunnelStateCodec.encode(state));
+  }
+}
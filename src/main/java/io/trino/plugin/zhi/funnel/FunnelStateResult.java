@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelFactory;
+import io.trino.plugin.zhi.state.FunnelState;
+import io.trino.plugin.zhi.state.FunnelStateCodec;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.ScalarFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+public final class FunnelStateResult {
+  private FunnelStateResult() {
+  }
+
+  @ScalarFunction("funnel_state_result")
+  @Description("Returns the funnel depth of a state built by funnel_state or funnel_state_merge")
+  @SqlType(StandardTypes.BIGINT)
+  public static long funnelStateResult(@SqlType(StandardTypes.VARBINARY) Slice value) {
+    FunnelState state = new FunnelFactory().createSingleState();
+    FunnelStateCodec.decode(value, state);
+    return Funnel.depth(state);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译后的漏斗步骤：事件名 -> 步骤下标，创建后不可变，可以被多个线程共享。
+ * 步骤中可以使用通配符 `%`，例如 `pages/order/%`，见 {@link StepPatterns}。
+ * 匹配时直接对事件的 UTF-8 字节计算哈希并比对，不解码成 String。
+ * 相同的步骤定义只编译一次，缓存在有界的并发缓存中；每个线程另外记住最近一次用到的步骤，
+ * 同一个查询里逐行调用时只需要逐字节比对参数，不用重新计算缓存 key。
+ */
+public final class FunnelSteps {
+  private static final int CACHE_SIZE = 1024;
+  private static final Cache<Slice, FunnelSteps> CACHE =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+  private static final ThreadLocal<FunnelSteps> LAST_USED = new ThreadLocal<>();
+
+  // v1 的原始参数，v2 时为 null
+  private final Slice events;
+  // v2 的原始参数，按步骤分组，v1 时为 null
+  private final Slice[][] steps;
+  private final int stepCount;
+
+  // 开放寻址哈希表：按事件名的 64 位哈希定位，命中后再逐字节比对
+  private final long[] hashes;
+  private final Slice[] keys;
+  private final int[] values;
+  private final int mask;
+  // 事件名长度范围，长度不在范围内的事件不用计算哈希
+  private final int minLength;
+  private final int maxLength;
+  // 带通配符的步骤，没有时为 null；普通事件名优先于通配符
+  private final StepPatterns patterns;
+
+  private FunnelSteps(Slice events, Slice[][] steps, Map<Slice, Integer> index, StepPatterns patterns,
+                      int stepCount) {
+    this.events = events;
+    this.steps = steps;
+    this.patterns = patterns;
+    this.stepCount = stepCount;
+
+    int capacity = Integer.highestOneBit(Math.max(index.size(), 1) * 2 - 1) << 1;
+    this.hashes = new long[capacity];
+    this.keys = new Slice[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+
+    int min = Integer.MAX_VALUE;
+    int max = -1;
+    for (Map.Entry<Slice, Integer> entry : index.entrySet()) {
+      Slice key = entry.getKey();
+      long hash = XxHash64.hash(key);
+      int position = (int) hash & mask;
+      while (keys[position] != null) {
+        position = (position + 1) & mask;
+      }
+      hashes[position] = hash;
+      keys[position] = key;
+      values[position] = entry.getValue();
+      min = Math.min(min, key.length());
+      max = Math.max(max, key.length());
+    }
+    this.minLength = min;
+    this.maxLength = max;
+  }
+
+  // v1: 用 `,` 分割的事件列表
+  public static FunnelSteps of(Slice events) {
+    FunnelSteps last = LAST_USED.get();
+    if (last != null && last.events != null && last.events.equals(events)) {
+      return last;
+    }
+
+    DynamicSliceOutput key = new DynamicSliceOutput(events.length() + 1);
+    key.writeByte(1);
+    key.writeBytes(events);
+    Slice cacheKey = key.slice();
+    FunnelSteps compiled = CACHE.getIfPresent(cacheKey);
+    if (compiled == null) {
+      compiled = compile(events);
+      CACHE.put(cacheKey, compiled);
+    }
+    LAST_USED.set(compiled);
+    return compiled;
+  }
+
+  // v2: 每个步骤一个 array(varchar)
+  public static FunnelSteps of(Block... steps) {
+    FunnelSteps last = LAST_USED.get();
+    if (last != null && last.matches(steps)) {
+      return last;
+    }
+
+    DynamicSliceOutput key = new DynamicSliceOutput(64);
+    key.writeByte(2);
+    for (Block step : steps) {
+      writeVarInt(key, step.getPositionCount());
+      for (int x = 0; x < step.getPositionCount(); x++) {
+        Slice item = VARCHAR.getSlice(step, x);
+        writeVarInt(key, item.length());
+        key.writeBytes(item);
+      }
+    }
+    Slice cacheKey = key.slice();
+    FunnelSteps compiled = CACHE.getIfPresent(cacheKey);
+    if (compiled == null) {
+      compiled = compile(steps);
+      CACHE.put(cacheKey, compiled);
+    }
+    LAST_USED.set(compiled);
+    return compiled;
+  }
+
+  // 直接由事件名 -> 下标构建，供组合多个漏斗的匹配器使用，不进入缓存
+  static FunnelSteps fromIndex(Map<Slice, Integer> index, int stepCount) {
+    return new FunnelSteps(null, null, index, null, stepCount);
+  }
+
+  private static FunnelSteps compile(Slice events) {
+    String[] names = events.toStringUtf8().split(",");
+    checkStepCount(names.length);
+    Map<Slice, Integer> index = new HashMap<>();
+    List<Slice> patterns = new ArrayList<>();
+    List<Integer> patternSteps = new ArrayList<>();
+    for (int i = 0; i < names.length; ++i) {
+      addStep(Slices.utf8Slice(names[i]), i, index, patterns, patternSteps);
+    }
+    return new FunnelSteps(Slices.copyOf(events), null, index, compilePatterns(patterns, patternSteps),
+        names.length);
+  }
+
+  private static FunnelSteps compile(Block... blocks) {
+    // 转换成倒排索引
+    // {eventName -> 0, eventName2 -> 0, eventName3 -> 1}
+    checkStepCount(blocks.length);
+    Slice[][] steps = new Slice[blocks.length][];
+    Map<Slice, Integer> index = new HashMap<>();
+    List<Slice> patterns = new ArrayList<>();
+    List<Integer> patternSteps = new ArrayList<>();
+    for (int i = 0; i < blocks.length; i++) {
+      Block step = blocks[i];
+      steps[i] = new Slice[step.getPositionCount()];
+      for (int x = 0; x < step.getPositionCount(); x++) {
+        // 拷贝一份，不引用查询中的 block 内存
+        Slice item = Slices.copyOf(VARCHAR.getSlice(step, x));
+        steps[i][x] = item;
+        addStep(item, i, index, patterns, patternSteps);
+      }
+    }
+    return new FunnelSteps(null, steps, index, compilePatterns(patterns, patternSteps), blocks.length);
+  }
+
+  // 步骤下标只占事件编码的低 STEP_BITS 位，超出后会和时间混在一起
+  private static void checkStepCount(int stepCount) {
+    if (stepCount > FunnelEvents.MAX_STEPS) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+          "funnel supports at most " + FunnelEvents.MAX_STEPS + " steps: " + stepCount);
+    }
+  }
+
+  private static void addStep(Slice name, int step, Map<Slice, Integer> index, List<Slice> patterns,
+                              List<Integer> patternSteps) {
+    if (StepPatterns.isPattern(name)) {
+      patterns.add(name);
+      patternSteps.add(step);
+    } else {
+      index.put(StepPatterns.unescape(name), step);
+    }
+  }
+
+  private static StepPatterns compilePatterns(List<Slice> patterns, List<Integer> patternSteps) {
+    return patterns.isEmpty() ? null : StepPatterns.compile(patterns, patternSteps);
+  }
+
+  private boolean matches(Block... blocks) {
+    if (steps == null || steps.length != blocks.length) {
+      return false;
+    }
+    for (int i = 0; i < blocks.length; i++) {
+      Block step = blocks[i];
+      Slice[] items = steps[i];
+      if (step.getPositionCount() != items.length) {
+        return false;
+      }
+      for (int x = 0; x < items.length; x++) {
+        int length = items[x].length();
+        if (step.isNull(x) || step.getSliceLength(x) != length
+            || !step.bytesEqual(x, 0, items[x], 0, length)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  public int stepCount() {
+    return stepCount;
+  }
+
+  // 事件对应的步骤下标，不在漏斗中返回 -1，整个过程不分配内存
+  public int indexOf(Slice event) {
+    int index = literalIndexOf(event);
+    if (index < 0 && patterns != null) {
+      return patterns.indexOf(event);
+    }
+    return index;
+  }
+
+  private int literalIndexOf(Slice event) {
+    int length = event.length();
+    if (length < minLength || length > maxLength) {
+      return -1;
+    }
+
+    long hash = XxHash64.hash(event);
+    int position = (int) hash & mask;
+    while (keys[position] != null) {
+      if (hashes[position] == hash
+          && keys[position].equals(0, keys[position].length(), event, 0, length)) {
+        return values[position];
+      }
+      position = (position + 1) & mask;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.plugin.zhi.state.MultiFunnelEvents;
+import io.trino.plugin.zhi.state.MultiFunnelState;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+import java.util.Arrays;
+
+/**
+ * 一次计算多个漏斗：每个事件只保存一次，附带它命中的所有漏斗步骤的掩码，
+ * 输出时按漏斗拆开，复用 funnel 的排序扫描逻辑，结果依次是每个漏斗的深度。
+ */
+@AggregationFunction("multi_funnel")
+public class MultiFunnel extends Base {
+  @InputFunction
+  public static void input(MultiFunnelState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block funnels) {
+    MultiFunnelSteps steps = MultiFunnelSteps.of(funnels);
+    MultiFunnelEvents events = state.get();
+    if (events == null) {
+      events = new MultiFunnelEvents(toTicks(windows), steps.funnelStarts(), steps.totalSteps());
+      state.set(events);
+    }
+    long mask = steps.maskOf(event);
+    if (mask == 0) {
+      return;
+    }
+    long before = events.getEstimatedSize();
+    events.add(toTicks(eventTime), mask);
+    state.addMemoryUsage(events.getEstimatedSize() - before);
+  }
+
+  @CombineFunction
+  public static void combine(MultiFunnelState state1, MultiFunnelState state2) {
+    MultiFunnelEvents other = state2.get();
+    if (other == null) {
+      return;
+    }
+
+    MultiFunnelEvents events = state1.get();
+    if (events == null) {
+      events = new MultiFunnelEvents(other.getWindow(), other.getFunnelStarts(), other.getTotalSteps());
+      state1.set(events);
+    }
+    long before = events.getEstimatedSize();
+    events.addAll(other);
+    state1.addMemoryUsage(events.getEstimatedSize() - before);
+  }
+
+  @OutputFunction("array(" + StandardTypes.BIGINT + ")")
+  public static void output(MultiFunnelState state, BlockBuilder out) {
+    MultiFunnelEvents events = state.get();
+    if (events == null) {
+      out.appendNull();
+      return;
+    }
+
+    int size = events.size();
+    long[] times = events.getTimes();
+    long[] masks = events.getMasks();
+    long[] buffer = new long[size];
+    long funnelStarts = events.getFunnelStarts();
+    int totalSteps = events.getTotalSteps();
+
+    BlockBuilder block = out.beginBlockEntry();
+    int start = Long.numberOfTrailingZeros(funnelStarts);
+    while (start < totalSteps) {
+      // 下一个漏斗的起始位置，没有时到掩码末尾
+      long rest = start + 1 < Long.SIZE ? funnelStarts & (-1L << (start + 1)) : 0;
+      int end = rest == 0 ? totalSteps : Long.numberOfTrailingZeros(rest);
+      long funnelMask = (end - start == Long.SIZE ? -1L : (1L << (end - start)) - 1) << start;
+
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        long matched = masks[i] & funnelMask;
+        if (matched != 0) {
+          buffer[count++] = FunnelEvents.encode(times[i], Long.numberOfTrailingZeros(matched) - start);
+        }
+      }
+      Arrays.sort(buffer, 0, count);
+      BIGINT.writeLong(block, FunnelEngine.maxDepthOfSorted(buffer, count, events.getWindow(), end - start));
+      start = end;
+    }
+    out.closeEntry();
+  }
+}
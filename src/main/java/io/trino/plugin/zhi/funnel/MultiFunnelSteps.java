@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * multi_funnel 编译后的步骤定义：把多个漏斗的所有步骤排成一个 64 位掩码，
+ * 第 f 个漏斗的第 j 步对应 funnelStarts 中第 f 个置位之后的第 j 位。
+ * 事件名 -> 掩码只需要查一次表，和漏斗个数无关。缓存方式与 {@link FunnelSteps} 相同。
+ */
+public final class MultiFunnelSteps {
+  private static final int CACHE_SIZE = 256;
+  private static final Cache<Slice, MultiFunnelSteps> CACHE =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+  private static final ThreadLocal<MultiFunnelSteps> LAST_USED = new ThreadLocal<>();
+
+  private final Slice[] definitions;
+  // 每个置位表示一个漏斗在掩码中的起始位置
+  private final long funnelStarts;
+  private final int totalSteps;
+  // 事件名 -> 掩码下标，不同事件名的掩码相同时共用一个下标
+  private final FunnelSteps matcher;
+  private final long[] masks;
+
+  private MultiFunnelSteps(Slice[] definitions, long funnelStarts, int totalSteps,
+                           FunnelSteps matcher, long[] masks) {
+    this.definitions = definitions;
+    this.funnelStarts = funnelStarts;
+    this.totalSteps = totalSteps;
+    this.matcher = matcher;
+    this.masks = masks;
+  }
+
+  // 每个元素是一个漏斗的定义，和 funnel 一样用 `,` 分割
+  public static MultiFunnelSteps of(Block funnels) {
+    MultiFunnelSteps last = LAST_USED.get();
+    if (last != null && last.matches(funnels)) {
+      return last;
+    }
+
+    DynamicSliceOutput key = new DynamicSliceOutput(64);
+    for (int i = 0; i < funnels.getPositionCount(); i++) {
+      Slice definition = VARCHAR.getSlice(funnels, i);
+      writeVarInt(key, definition.length());
+      key.writeBytes(definition);
+    }
+    Slice cacheKey = key.slice();
+    MultiFunnelSteps compiled = CACHE.getIfPresent(cacheKey);
+    if (compiled == null) {
+      compiled = compile(funnels);
+      CACHE.put(cacheKey, compiled);
+    }
+    LAST_USED.set(compiled);
+    return compiled;
+  }
+
+  private static MultiFunnelSteps compile(Block funnels) {
+    int funnelCount = funnels.getPositionCount();
+    if (funnelCount == 0) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "multi_funnel requires at least one funnel");
+    }
+
+    Slice[] definitions = new Slice[funnelCount];
+    Map<Slice, Long> eventMasks = new LinkedHashMap<>();
+    long funnelStarts = 0;
+    int offset = 0;
+    for (int f = 0; f < funnelCount; f++) {
+      if (funnels.isNull(f)) {
+        throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "multi_funnel funnel definition must not be null");
+      }
+      definitions[f] = Slices.copyOf(VARCHAR.getSlice(funnels, f));
+      String[] names = definitions[f].toStringUtf8().split(",");
+      if (offset + names.length > Long.SIZE) {
+        throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+            "multi_funnel supports at most " + Long.SIZE + " steps in total");
+      }
+      // 同一个漏斗中重复的事件名以最后一次出现为准，和 funnel 一致
+      Map<Slice, Integer> index = new HashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        index.put(Slices.utf8Slice(names[i]), i);
+      }
+      for (Map.Entry<Slice, Integer> entry : index.entrySet()) {
+        eventMasks.merge(entry.getKey(), 1L << (offset + entry.getValue()), (a, b) -> a | b);
+      }
+      funnelStarts |= 1L << offset;
+      offset += names.length;
+    }
+
+    Map<Long, Integer> maskIds = new HashMap<>();
+    Map<Slice, Integer> index = new HashMap<>();
+    for (Map.Entry<Slice, Long> entry : eventMasks.entrySet()) {
+      Integer id = maskIds.get(entry.getValue());
+      if (id == null) {
+        id = maskIds.size();
+        maskIds.put(entry.getValue(), id);
+      }
+      index.put(entry.getKey(), id);
+    }
+    long[] masks = new long[maskIds.size()];
+    for (Map.Entry<Long, Integer> entry : maskIds.entrySet()) {
+      masks[entry.getValue()] = entry.getKey();
+    }
+    return new MultiFunnelSteps(definitions, funnelStarts, offset,
+        FunnelSteps.fromIndex(index, masks.length), masks);
+  }
+
+  private boolean matches(Block funnels) {
+    if (definitions.length != funnels.getPositionCount()) {
+      return false;
+    }
+    for (int i = 0; i < definitions.length; i++) {
+      int length = definitions[i].length();
+      if (funnels.isNull(i) || funnels.getSliceLength(i) != length
+          || !funnels.bytesEqual(i, 0, definitions[i], 0, length)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public long funnelStarts() {
+    return funnelStarts;
+  }
+
+  public int totalSteps() {
+    return totalSteps;
+  }
+
+  // 事件命中的所有漏斗步骤的掩码，没有命中返回 0
+  public long maskOf(Slice event) {
+    int id = matcher.indexOf(event);
+    return id < 0 ? 0 : masks[id];
+  }
+}
@@ -0,0 +1,489 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.plugin.zhi.state.FunnelStreamState;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.BigintType;
+import io.trino.spi.type.StandardTypes;
+import java.util.Arrays;
+
+/**
+ * 参数和结果与 funnel 相同，适用于每个分组的事件按时间有序输入的场景，
+ * 例如 funnel_ordered(... ORDER BY ts) 或按 (user_id, event_time) 聚簇的表。
+ * <p>
+ * funnel 的深度等于：存在起始事件 s 满足 s <= t < s + window 的后续步骤事件 t 中最大的步骤 + 1。
+ * 因此起始事件只需要合并成覆盖区间；后续步骤到达时如果已被覆盖就直接更新深度，否则暂存，等起始事件到达时再匹配。
+ * 不超过当前深度的事件不会再影响结果，直接丢弃。
+ * <p>
+ * 输入按时间有序时，大部分区间和暂存事件之后都不会再被用到（见 {@link #compact}），
+ * 每个分组只保存两个区间和不超过步骤个数的暂存事件，内存和会话个数无关。
+ * 每个分片内有序、分片之间的时间范围不交错时（例如 ORDER BY ts，或按 (user_id, event_time) 聚簇的表），
+ * 结果和 funnel 相同。检测到乱序后不再丢弃数据，但之前已经丢弃的数据无法恢复，结果可能偏小，不会偏大。
+ */
+@AggregationFunction("funnel_ordered")
+public class OrderedFunnel extends Base {
+  private static final int EVENT_LENGTH = Long.BYTES;
+  private static final int INTERVAL_LENGTH = Long.BYTES * 2;
+  private static final int INITIAL_EVENTS = 4;
+
+  @CombineFunction
+  public static void combine(FunnelStreamState state1, FunnelStreamState state2) {
+    if (state2.getStepCount() == 0) {
+      return;
+    }
+
+    if (state1.getStepCount() == 0) {
+      state1.setWindow(state2.getWindow());
+      state1.setStepCount(state2.getStepCount());
+      state1.setMaxStep(state2.getMaxStep());
+      state1.setIntervals(state2.getIntervals() == null ? null : Slices.copyOf(state2.getIntervals()));
+      state1.setIntervalCount(state2.getIntervalCount());
+      state1.setPending(state2.getPending() == null ? null : Slices.copyOf(state2.getPending()));
+      state1.setPendingCount(state2.getPendingCount());
+      state1.setLastTime(state2.getLastTime());
+      state1.setOutOfOrder(state2.isOutOfOrder());
+      return;
+    }
+
+    // 合并后不再压缩：各分片的压缩只假设其它分片的事件不落在自己的时间范围内，和合并顺序无关
+    state1.setLastTime(Math.max(state1.getLastTime(), state2.getLastTime()));
+    state1.setOutOfOrder(state1.isOutOfOrder() || state2.isOutOfOrder());
+
+    if (state2.getMaxStep() > state1.getMaxStep()) {
+      raiseMaxStep(state1, state2.getMaxStep());
+    }
+    // 先合并对方的覆盖区间（同时匹配本地暂存的事件），再用合并后的区间匹配对方暂存的事件
+    Slice intervals = state2.getIntervals();
+    for (int i = 0; i < state2.getIntervalCount() && !isSaturated(state1); i++) {
+      addInterval(state1, intervals.getLong(i * INTERVAL_LENGTH), intervals.getLong(i * INTERVAL_LENGTH + Long.BYTES));
+    }
+    Slice pending = state2.getPending();
+    for (int i = 0; i < state2.getPendingCount() && !isSaturated(state1); i++) {
+      addStep(state1, pending.getLong(i * EVENT_LENGTH));
+    }
+  }
+
+  @OutputFunction(StandardTypes.BIGINT)
+  public static void output(FunnelStreamState state, BlockBuilder out) {
+    if (state.getStepCount() == 0) {
+      out.appendNull();
+      return;
+    }
+
+    BigintType.BIGINT.writeLong(out, state.getMaxStep() + 1);
+  }
+
+  private static void init(FunnelStreamState state, long window, int stepCount) {
+    state.setWindow(window);
+    state.setStepCount(stepCount);
+    state.setLastTime(Long.MIN_VALUE);
+  }
+
+  private static void add(FunnelStreamState state, long event) {
+    if (isSaturated(state)) {
+      return;
+    }
+    long time = FunnelEvents.time(event);
+    if (time < state.getLastTime()) {
+      state.setOutOfOrder(true);
+    } else {
+      state.setLastTime(time);
+    }
+
+    if (FunnelEvents.step(event) == 0) {
+      long window = state.getWindow();
+      if (window > 0) {
+        // 时间和窗口期都很大时不能溢出成负数
+        addInterval(state, time, time > Long.MAX_VALUE - window ? Long.MAX_VALUE : time + window);
+      }
+    } else {
+      addStep(state, event);
+    }
+    if (!state.isOutOfOrder()) {
+      compact(state);
+    }
+  }
+
+  /**
+   * 有序输入时丢弃之后不会再影响结果的区间和暂存事件。之后的事件，以及时间范围在后面的分片中的事件，
+   * 时间都不早于 lastTime；时间范围在前面的分片中的事件都不晚于本分片第一个事件的时间：
+   * <ul>
+   * <li>中间的区间在最后一个区间开始之前就结束了，覆盖不到之后的事件，也覆盖不到更早分片中的事件</li>
+   * <li>第一个区间开始之前的暂存事件可能被更早分片的最后一个区间覆盖，越早越容易被覆盖，
+   * 只保留不存在更早（或同时）且步骤更大的事件的那些，构成按步骤递增的阶梯，不超过步骤个数</li>
+   * <li>其它暂存事件没有被第一个区间覆盖，也就覆盖不到更早分片中的区间，只能被时间相同的起始事件覆盖，
+   * 只保留时间等于 lastTime 的事件中步骤最大的一个</li>
+   * </ul>
+   */
+  private static void compact(FunnelStreamState state) {
+    int intervalCount = state.getIntervalCount();
+    Slice intervals = state.getIntervals();
+    if (intervalCount > 2) {
+      int last = intervalCount - 1;
+      writeInterval(intervals, 1, intervals.getLong(last * INTERVAL_LENGTH),
+          intervals.getLong(last * INTERVAL_LENGTH + Long.BYTES));
+      intervalCount = 2;
+      state.setIntervalCount(intervalCount);
+    }
+
+    int count = state.getPendingCount();
+    if (count == 0) {
+      return;
+    }
+    Slice pending = state.getPending();
+    long firstStart = intervalCount == 0 ? Long.MAX_VALUE : intervals.getLong(0);
+    long lastTime = state.getLastTime();
+    // 编码后的值先按时间再按步骤排序
+    long[] events = new long[count];
+    for (int i = 0; i < count; i++) {
+      events[i] = pending.getLong(i * EVENT_LENGTH);
+    }
+    Arrays.sort(events);
+
+    int kept = 0;
+    int prefixStep = -1;
+    boolean latestKept = false;
+    boolean hasLatest = false;
+    long latest = 0;
+    for (int i = 0; i < count; i++) {
+      long event = events[i];
+      long time = FunnelEvents.time(event);
+      boolean lastOfTime = i + 1 == count || FunnelEvents.time(events[i + 1]) != time;
+      if (time < firstStart && lastOfTime && FunnelEvents.step(event) > prefixStep) {
+        pending.setLong(kept++ * EVENT_LENGTH, event);
+        prefixStep = FunnelEvents.step(event);
+        latestKept = time == lastTime;
+      }
+      if (time == lastTime && lastOfTime) {
+        latest = event;
+        hasLatest = true;
+      }
+    }
+    if (hasLatest && !latestKept) {
+      pending.setLong(kept++ * EVENT_LENGTH, latest);
+    }
+    state.setPendingCount(kept);
+  }
+
+  // 已经走完所有步骤，之后的事件不会再改变结果
+  private static boolean isSaturated(FunnelStreamState state) {
+    return state.getMaxStep() + 1 >= state.getStepCount();
+  }
+
+  private static void addStep(FunnelStreamState state, long event) {
+    int step = FunnelEvents.step(event);
+    if (step <= state.getMaxStep()) {
+      return;
+    }
+    if (isCovered(state, FunnelEvents.time(event))) {
+      raiseMaxStep(state, step);
+      return;
+    }
+
+    int count = state.getPendingCount();
+    Slice pending = state.getPending();
+    if (pending == null) {
+      pending = Slices.allocate(EVENT_LENGTH * INITIAL_EVENTS);
+    }
+    pending = Slices.ensureSize(pending, (count + 1) * EVENT_LENGTH);
+    pending.setLong(count * EVENT_LENGTH, event);
+    state.setPending(pending);
+    state.setPendingCount(count + 1);
+  }
+
+  private static void raiseMaxStep(FunnelStreamState state, int step) {
+    state.setMaxStep(step);
+    if (isSaturated(state)) {
+      state.setIntervals(null);
+      state.setIntervalCount(0);
+      state.setPending(null);
+      state.setPendingCount(0);
+      return;
+    }
+
+    // 不超过当前深度的暂存事件不会再影响结果
+    Slice pending = state.getPending();
+    int kept = 0;
+    for (int i = 0; i < state.getPendingCount(); i++) {
+      long event = pending.getLong(i * EVENT_LENGTH);
+      if (FunnelEvents.step(event) > step) {
+        pending.setLong(kept++ * EVENT_LENGTH, event);
+      }
+    }
+    state.setPendingCount(kept);
+  }
+
+  // 二分查找起点不晚于 time 的最后一个区间，有序输入时通常直接命中最后一个区间
+  private static boolean isCovered(FunnelStreamState state, long time) {
+    int count = state.getIntervalCount();
+    if (count == 0) {
+      return false;
+    }
+    Slice intervals = state.getIntervals();
+    int last = count - 1;
+    if (intervals.getLong(last * INTERVAL_LENGTH) <= time) {
+      return time < intervals.getLong(last * INTERVAL_LENGTH + Long.BYTES);
+    }
+    int low = 0;
+    int high = last - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (intervals.getLong(middle * INTERVAL_LENGTH) <= time) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high >= 0 && time < intervals.getLong(high * INTERVAL_LENGTH + Long.BYTES);
+  }
+
+  private static void addInterval(FunnelStreamState state, long start, long end) {
+    int count = state.getIntervalCount();
+    Slice intervals = state.getIntervals();
+    long lastStart = count == 0 ? 0 : intervals.getLong((count - 1) * INTERVAL_LENGTH);
+    long lastEnd = count == 0 ? 0 : intervals.getLong((count - 1) * INTERVAL_LENGTH + Long.BYTES);
+    if (count == 0 || start > lastEnd) {
+      // 有序输入的常见情况：在末尾追加
+      if (intervals == null) {
+        intervals = Slices.allocate(INTERVAL_LENGTH);
+      }
+      intervals = Slices.ensureSize(intervals, (count + 1) * INTERVAL_LENGTH);
+      intervals.setLong(count * INTERVAL_LENGTH, start);
+      intervals.setLong(count * INTERVAL_LENGTH + Long.BYTES, end);
+      state.setIntervals(intervals);
+      state.setIntervalCount(count + 1);
+    } else if (start >= lastStart) {
+      // 和最后一个区间重叠，延长即可
+      intervals.setLong((count - 1) * INTERVAL_LENGTH + Long.BYTES, Math.max(lastEnd, end));
+    } else {
+      mergeInterval(state, start, end);
+    }
+
+    // 新覆盖的范围只可能在 [start, end) 内
+    Slice pending = state.getPending();
+    int maxStep = state.getMaxStep();
+    for (int i = 0; i < state.getPendingCount(); i++) {
+      long event = pending.getLong(i * EVENT_LENGTH);
+      long time = FunnelEvents.time(event);
+      if (start <= time && time < end) {
+        maxStep = Math.max(maxStep, FunnelEvents.step(event));
+      }
+    }
+    if (maxStep > state.getMaxStep()) {
+      raiseMaxStep(state, maxStep);
+    }
+  }
+
+  // 乱序的起始事件：合并所有和 [start, end) 重叠或相邻的区间，重新生成区间列表
+  private static void mergeInterval(FunnelStreamState state, long start, long end) {
+    int count = state.getIntervalCount();
+    Slice intervals = state.getIntervals();
+    Slice merged = Slices.allocate((count + 1) * INTERVAL_LENGTH);
+    int size = 0;
+    boolean inserted = false;
+    for (int i = 0; i < count; i++) {
+      long intervalStart = intervals.getLong(i * INTERVAL_LENGTH);
+      long intervalEnd = intervals.getLong(i * INTERVAL_LENGTH + Long.BYTES);
+      if (intervalEnd < start) {
+        size = writeInterval(merged, size, intervalStart, intervalEnd);
+      } else if (intervalStart > end) {
+        if (!inserted) {
+          size = writeInterval(merged, size, start, end);
+          inserted = true;
+        }
+        size = writeInterval(merged, size, intervalStart, intervalEnd);
+      } else {
+        start = Math.min(start, intervalStart);
+        end = Math.max(end, intervalEnd);
+      }
+    }
+    if (!inserted) {
+      size = writeInterval(merged, size, start, end);
+    }
+    state.setIntervals(merged);
+    state.setIntervalCount(size);
+  }
+
+  private static int writeInterval(Slice intervals, int index, long start, long end) {
+    intervals.setLong(index * INTERVAL_LENGTH, start);
+    intervals.setLong(index * INTERVAL_LENGTH + Long.BYTES, end);
+    return index + 1;
+  }
+
+  public static void inputBase(FunnelStreamState state, double eventTime, double windows,
+                               Slice event, Block... steps) {
+    FunnelSteps funnelSteps = FunnelSteps.of(steps);
+    if (state.getStepCount() == 0) {
+      init(state, toTicks(windows), funnelSteps.stepCount());
+    }
+    int eventIndex = funnelSteps.indexOf(event);
+    if (eventIndex >= 0) {
+      add(state, FunnelEvents.encode(toTicks(eventTime), eventIndex));
+    }
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType(StandardTypes.VARCHAR) Slice events) {
+    FunnelSteps funnelSteps = FunnelSteps.of(events);
+    if (state.getStepCount() == 0) {
+      init(state, toTicks(windows), funnelSteps.stepCount());
+    }
+    int eventIndex = funnelSteps.indexOf(event);
+    if (eventIndex >= 0) {
+      add(state, FunnelEvents.encode(toTicks(eventTime), eventIndex));
+    }
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2) {
+    inputBase(state, eventTime, windows, event, s1, s2);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9);
+  }
+
+  @InputFunction
+  public static void input(FunnelStreamState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.DOUBLE) double windows,
+                           @SqlType(StandardTypes.VARCHAR) Slice event,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s1,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s2,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s3,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s4,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s5,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s6,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s7,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s8,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s9,
+                           @SqlType("array(" + StandardTypes.VARCHAR + ")") Block s10) {
+    inputBase(state, eventTime, windows, event, s1, s2, s3, s4, s5, s6, s7, s8, s9, s10);
+  }
+}
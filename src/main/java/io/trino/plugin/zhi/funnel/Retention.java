@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.trino.plugin.zhi.state.RetentionState;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.BooleanType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 按时间桶计算留存：第 0 个元素表示出现过首次事件，第 i 个元素表示在最早的首次事件所在桶之后的第 i 个桶中
+ * 出现过返回事件。每个分组的状态是一个固定大小的位图，和事件个数无关。
+ * 分组内按时间有序输入（例如 retention(... ORDER BY ts)）时结果是精确的；
+ * 否则先到达的事件决定了位图的基准，超出范围的返回事件会被丢弃，结果可能偏小，但不会偏大。
+ */
+@AggregationFunction("retention")
+public class Retention {
+  // 第 0 位留给首次事件，剩下的位对应返回事件的桶
+  public static final int MAX_BUCKETS = Long.SIZE - 1;
+
+  private static final String TIMESTAMP_MILLIS = StandardTypes.TIMESTAMP + "(3)";
+  private static final long MICROSECONDS_PER_MILLISECOND = 1_000;
+
+  @InputFunction
+  public static void input(RetentionState state,
+                           @SqlType(StandardTypes.DOUBLE) double eventTime,
+                           @SqlType(StandardTypes.BOOLEAN) boolean first,
+                           @SqlType(StandardTypes.BOOLEAN) boolean returned,
+                           @SqlType(StandardTypes.DOUBLE) double bucketSize,
+                           @SqlType(StandardTypes.BIGINT) long buckets) {
+    if (!(bucketSize > 0)) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "bucket size must be positive: " + bucketSize);
+    }
+    addEvent(state, (long) Math.floor(eventTime / bucketSize), first, returned, buckets);
+  }
+
+  @InputFunction
+  public static void input(RetentionState state,
+                           @SqlType(StandardTypes.BIGINT) long eventTime,
+                           @SqlType(StandardTypes.BOOLEAN) boolean first,
+                           @SqlType(StandardTypes.BOOLEAN) boolean returned,
+                           @SqlType(StandardTypes.BIGINT) long bucketSize,
+                           @SqlType(StandardTypes.BIGINT) long buckets) {
+    if (bucketSize <= 0) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "bucket size must be positive: " + bucketSize);
+    }
+    addEvent(state, Math.floorDiv(eventTime, bucketSize), first, returned, buckets);
+  }
+
+  @InputFunction
+  public static void inputTimestamp(RetentionState state,
+                                    @SqlType(TIMESTAMP_MILLIS) long eventTime,
+                                    @SqlType(StandardTypes.BOOLEAN) boolean first,
+                                    @SqlType(StandardTypes.BOOLEAN) boolean returned,
+                                    @SqlType(StandardTypes.BIGINT) long bucketSize,
+                                    @SqlType(StandardTypes.BIGINT) long buckets) {
+    if (bucketSize <= 0) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "bucket size must be positive: " + bucketSize);
+    }
+    addEvent(state, Math.floorDiv(eventTime, bucketSize * MICROSECONDS_PER_MILLISECOND), first, returned,
+        buckets);
+  }
+
+  private static void addEvent(RetentionState state, long bucket, boolean first, boolean returned, long buckets) {
+    if (state.getBuckets() == 0) {
+      if (buckets < 1 || buckets > MAX_BUCKETS) {
+        throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+            "buckets must be between 1 and " + MAX_BUCKETS + ": " + buckets);
+      }
+      state.setBuckets((int) buckets);
+    } else if (state.getBuckets() != buckets) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "buckets must be constant: " + buckets);
+    }
+
+    if (first) {
+      addFirst(state, bucket);
+    }
+    if (returned) {
+      addReturn(state, bucket);
+    }
+  }
+
+  @CombineFunction
+  public static void combine(RetentionState state1, RetentionState state2) {
+    if (state2.getBuckets() == 0) {
+      return;
+    }
+
+    if (state1.getBuckets() == 0) {
+      state1.setBuckets(state2.getBuckets());
+      state1.setAnchorSet(state2.isAnchorSet());
+      state1.setFirstSeen(state2.isFirstSeen());
+      state1.setAnchor(state2.getAnchor());
+      state1.setBits(state2.getBits());
+      return;
+    }
+    if (state1.getBuckets() != state2.getBuckets()) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "buckets must be constant: " + state2.getBuckets());
+    }
+    if (!state2.isAnchorSet()) {
+      return;
+    }
+
+    long anchor = state2.getAnchor();
+    long bits = state2.getBits();
+    if (state2.isFirstSeen()) {
+      addFirst(state1, anchor);
+      bits &= ~1L;
+    }
+    // 从低位到高位逐个合并，先确定更早的基准，减少被挤出位图的桶
+    while (bits != 0) {
+      addReturn(state1, anchor + Long.numberOfTrailingZeros(bits));
+      bits &= bits - 1;
+    }
+  }
+
+  private static void addFirst(RetentionState state, long bucket) {
+    if (!state.isAnchorSet()) {
+      state.setAnchorSet(true);
+      state.setAnchor(bucket);
+      state.setBits(1);
+    } else if (!state.isFirstSeen() || bucket < state.getAnchor()) {
+      // 以首次事件所在的桶为新的基准，早于它的返回事件直接丢弃；
+      // 已有首次事件时第 0 位是首次事件的标记，不能随基准移动变成返回事件
+      long bits = state.isFirstSeen() ? state.getBits() & ~1L : state.getBits();
+      state.setBits(align(bits, state.getAnchor(), bucket, state.getBuckets()) | 1);
+      state.setAnchor(bucket);
+    }
+    state.setFirstSeen(true);
+  }
+
+  private static void addReturn(RetentionState state, long bucket) {
+    if (!state.isAnchorSet()) {
+      state.setAnchorSet(true);
+      state.setAnchor(bucket);
+      state.setBits(1);
+      return;
+    }
+
+    long anchor = state.getAnchor();
+    if (bucket < anchor) {
+      if (state.isFirstSeen()) {
+        return;
+      }
+      state.setBits(align(state.getBits(), anchor, bucket, state.getBuckets()));
+      state.setAnchor(bucket);
+      anchor = bucket;
+    }
+    long offset = bucket - anchor;
+    if (offset <= state.getBuckets()) {
+      state.setBits(state.getBits() | 1L << offset);
+    }
+  }
+
+  // 把以 from 为基准的位图换算成以 to 为基准，超出 [0, buckets] 的位丢弃
+  private static long align(long bits, long from, long to, int buckets) {
+    long shift = from - to;
+    if (shift >= Long.SIZE || shift <= -Long.SIZE) {
+      bits = 0;
+    } else if (shift >= 0) {
+      bits <<= shift;
+    } else {
+      bits >>>= -shift;
+    }
+    return buckets == MAX_BUCKETS ? bits : bits & ((1L << (buckets + 1)) - 1);
+  }
+
+  @OutputFunction("array(" + StandardTypes.BOOLEAN + ")")
+  public static void output(RetentionState state, BlockBuilder out) {
+    if (state.getBuckets() == 0) {
+      out.appendNull();
+      return;
+    }
+
+    // 没有首次事件的分组不属于任何一批用户，结果全部为 false
+    long bits = state.isFirstSeen() ? state.getBits() : 0;
+    BlockBuilder block = out.beginBlockEntry();
+    for (int i = 0; i <= state.getBuckets(); i++) {
+      BooleanType.BOOLEAN.writeBoolean(block, (bits >>> i & 1) != 0);
+    }
+    out.closeEntry();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.trino.plugin.zhi.state.FunnelMergeState;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.BigintType;
+import io.trino.spi.type.BooleanType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 汇总 retention 的结果：第 i 个元素是第 i 个位置为 true 的分组个数，
+ * 第 0 个元素即为首次事件的用户数。
+ */
+@AggregationFunction("retention_merge")
+public class RetentionMerge {
+  @InputFunction
+  public static void input(FunnelMergeState state,
+                           @SqlType("array(" + StandardTypes.BOOLEAN + ")") Block retention) {
+    int length = retention.getPositionCount();
+    if (length > Retention.MAX_BUCKETS + 1) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT,
+          "retention must not have more than " + (Retention.MAX_BUCKETS + 1) + " elements: " + length);
+    }
+    if (length == 0) {
+      return;
+    }
+    // 先登记数组长度，保证没有人留存的桶也输出 0
+    state.add(length, 0);
+    for (int i = 0; i < length; i++) {
+      if (!retention.isNull(i) && BooleanType.BOOLEAN.getBoolean(retention, i)) {
+        state.add(i + 1, 1);
+      }
+    }
+  }
+
+  @CombineFunction
+  public static void combine(FunnelMergeState state, FunnelMergeState otherState) {
+    int maxDepth = otherState.getMaxDepth();
+    if (maxDepth == 0) {
+      return;
+    }
+    state.add(maxDepth, 0);
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      long count = otherState.getCount(depth);
+      if (count != 0) {
+        state.add(depth, count);
+      }
+    }
+  }
+
+  @OutputFunction("array(" + StandardTypes.BIGINT + ")")
+  public static void output(FunnelMergeState state, BlockBuilder out) {
+    int maxDepth = state.getMaxDepth();
+    if (maxDepth == 0) {
+      out.appendNull();
+      return;
+    }
+
+    BlockBuilder block = out.beginBlockEntry();
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      BigintType.BIGINT.writeLong(block, state.getCount(depth));
+    }
+    out.closeEntry();
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.funnel;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带通配符 `%`（匹配任意长度的字节，`\%` 表示 `%` 本身）的步骤模式，编译成 UTF-8 字节上的前缀树。
+ * 每个模式第一个 `%` 之前的固定前缀放在树上，匹配时沿着事件的字节从根走一遍，
+ * 经过的节点上挂着的就是前缀相同的候选模式，再校验 `%` 之后的部分。
+ * 候选按前缀从长到短、前缀相同时按定义顺序，第一个校验通过的模式生效。
+ * 匹配时只需要按事件的字节走一遍前缀树，开销和模式个数无关；只有以 `%` 开头（前缀为空）的模式每次都要校验。
+ */
+final class StepPatterns {
+  private static final byte WILDCARD = '%';
+  private static final byte ESCAPE = '\\';
+  private static final long NO_EDGE = -1;
+
+  // 前缀树的边：key = 父节点编号 << 8 | 字节，开放寻址
+  private final long[] edgeKeys;
+  private final int[] edgeTargets;
+  private final int edgeMask;
+  private final int[] parents;
+  // 节点 n 上挂着的模式下标为 nodePatterns[nodeOffsets[n] .. nodeOffsets[n + 1])
+  private final int[] nodeOffsets;
+  private final int[] nodePatterns;
+  // 每个模式按 `%` 分割后的片段，第一个片段是前缀，至少有两个片段
+  private final Slice[][] segments;
+  private final int[] steps;
+
+  private StepPatterns(long[] edgeKeys, int[] edgeTargets, int[] parents, int[] nodeOffsets,
+                       int[] nodePatterns, Slice[][] segments, int[] steps) {
+    this.edgeKeys = edgeKeys;
+    this.edgeTargets = edgeTargets;
+    this.edgeMask = edgeKeys.length - 1;
+    this.parents = parents;
+    this.nodeOffsets = nodeOffsets;
+    this.nodePatterns = nodePatterns;
+    this.segments = segments;
+    this.steps = steps;
+  }
+
+  // 包含没有转义的 `%`
+  static boolean isPattern(Slice name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (isEscape(name, i)) {
+        i++;
+      } else if (name.getByte(i) == WILDCARD) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // 去掉转义，得到普通事件名
+  static Slice unescape(Slice name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (isEscape(name, i)) {
+        return split(name).get(0);
+      }
+    }
+    return name;
+  }
+
+  // 只有 `\%` 和 `\\` 是转义，其它的反斜杠保持原样
+  private static boolean isEscape(Slice name, int i) {
+    if (name.getByte(i) != ESCAPE || i + 1 >= name.length()) {
+      return false;
+    }
+    byte next = name.getByte(i + 1);
+    return next == WILDCARD || next == ESCAPE;
+  }
+
+  static StepPatterns compile(List<Slice> patterns, List<Integer> patternSteps) {
+    Map<Long, Integer> edges = new HashMap<>();
+    List<Integer> parentList = new ArrayList<>();
+    List<List<Integer>> patternsByNode = new ArrayList<>();
+    parentList.add(-1);
+    patternsByNode.add(new ArrayList<>());
+
+    Slice[][] segments = new Slice[patterns.size()][];
+    int[] steps = new int[patterns.size()];
+    for (int p = 0; p < patterns.size(); p++) {
+      segments[p] = split(patterns.get(p)).toArray(new Slice[0]);
+      steps[p] = patternSteps.get(p);
+      int node = 0;
+      Slice prefix = segments[p][0];
+      for (int i = 0; i < prefix.length(); i++) {
+        long key = edgeKey(node, prefix.getByte(i));
+        Integer child = edges.get(key);
+        if (child == null) {
+          child = parentList.size();
+          edges.put(key, child);
+          parentList.add(node);
+          patternsByNode.add(new ArrayList<>());
+        }
+        node = child;
+      }
+      patternsByNode.get(node).add(p);
+    }
+
+    int capacity = Integer.highestOneBit(Math.max(edges.size(), 1) * 2 - 1) << 1;
+    long[] edgeKeys = new long[capacity];
+    int[] edgeTargets = new int[capacity];
+    Arrays.fill(edgeKeys, NO_EDGE);
+    for (Map.Entry<Long, Integer> entry : edges.entrySet()) {
+      int position = hash(entry.getKey()) & (capacity - 1);
+      while (edgeKeys[position] != NO_EDGE) {
+        position = (position + 1) & (capacity - 1);
+      }
+      edgeKeys[position] = entry.getKey();
+      edgeTargets[position] = entry.getValue();
+    }
+
+    int nodeCount = parentList.size();
+    int[] parents = new int[nodeCount];
+    int[] nodeOffsets = new int[nodeCount + 1];
+    int[] nodePatterns = new int[patterns.size()];
+    int offset = 0;
+    for (int n = 0; n < nodeCount; n++) {
+      parents[n] = parentList.get(n);
+      nodeOffsets[n] = offset;
+      for (int p : patternsByNode.get(n)) {
+        nodePatterns[offset++] = p;
+      }
+    }
+    nodeOffsets[nodeCount] = offset;
+    return new StepPatterns(edgeKeys, edgeTargets, parents, nodeOffsets, nodePatterns, segments, steps);
+  }
+
+  // 事件匹配的步骤下标，没有匹配的模式返回 -1，整个过程不分配内存
+  int indexOf(Slice event) {
+    int node = 0;
+    int depth = 0;
+    int length = event.length();
+    while (depth < length) {
+      int child = child(node, event.getByte(depth));
+      if (child < 0) {
+        break;
+      }
+      node = child;
+      depth++;
+    }
+    // 从最深的节点往回找，前缀越长的模式越优先
+    for (; node >= 0; node = parents[node]) {
+      for (int i = nodeOffsets[node]; i < nodeOffsets[node + 1]; i++) {
+        int pattern = nodePatterns[i];
+        if (matchesRest(segments[pattern], event)) {
+          return steps[pattern];
+        }
+      }
+    }
+    return -1;
+  }
+
+  // 前缀已经匹配，校验剩下的片段：最后一个片段是后缀，中间的片段按顺序贪心查找
+  private static boolean matchesRest(Slice[] segments, Slice event) {
+    int position = segments[0].length();
+    Slice suffix = segments[segments.length - 1];
+    int end = event.length() - suffix.length();
+    if (end < position || !event.equals(end, suffix.length(), suffix, 0, suffix.length())) {
+      return false;
+    }
+    for (int s = 1; s < segments.length - 1; s++) {
+      int found = indexOf(event, segments[s], position, end);
+      if (found < 0) {
+        return false;
+      }
+      position = found + segments[s].length();
+    }
+    return true;
+  }
+
+  private static int indexOf(Slice event, Slice segment, int from, int end) {
+    int length = segment.length();
+    for (int i = from; i + length <= end; i++) {
+      if (event.equals(i, length, segment, 0, length)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int child(int node, byte b) {
+    long key = edgeKey(node, b);
+    int position = hash(key) & edgeMask;
+    while (edgeKeys[position] != NO_EDGE) {
+      if (edgeKeys[position] == key) {
+        return edgeTargets[position];
+      }
+      position = (position + 1) & edgeMask;
+    }
+    return -1;
+  }
+
+  private static long edgeKey(int node, byte b) {
+    return (long) node << Byte.SIZE | (b & 0xFF);
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // 按没有转义的 `%` 分割，同时去掉转义
+  private static List<Slice> split(Slice name) {
+    List<Slice> parts = new ArrayList<>();
+    DynamicSliceOutput current = new DynamicSliceOutput(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      byte b = name.getByte(i);
+      if (isEscape(name, i)) {
+        current.writeByte(name.getByte(++i));
+      } else if (b == WILDCARD) {
+        parts.add(Slices.copyOf(current.slice()));
+        current = new DynamicSliceOutput(name.length() - i);
+      } else {
+        current.writeByte(b);
+      }
+    }
+    parts.add(Slices.copyOf(current.slice()));
+    return parts;
+  }
+}
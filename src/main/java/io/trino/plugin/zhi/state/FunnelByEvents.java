@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * funnel_by 单个分组的数据：维度值字典，以及所有维度共用的事件列表，
+ * 每个事件另外记录所属维度在字典中的编号。事件编码见 {@link FunnelEvents}。
+ */
+public final class FunnelByEvents {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(FunnelByEvents.class).instanceSize();
+  // 字典中每个维度值除了本身字节以外的开销（HashMap 节点、Integer 以及 Slice 对象）
+  private static final long DIMENSION_OVERHEAD = 96;
+  private static final int INITIAL_CAPACITY = 4;
+
+  private final long window;
+  private final int stepCount;
+  private final Map<Slice, Integer> dimensionIds = new HashMap<>();
+  private final List<Slice> dimensions = new ArrayList<>();
+  private long dimensionBytes;
+
+  private long[] events = new long[INITIAL_CAPACITY];
+  private int[] eventDimensions = new int[INITIAL_CAPACITY];
+  private int size;
+
+  public FunnelByEvents(long window, int stepCount) {
+    this.window = window;
+    this.stepCount = stepCount;
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  public int getStepCount() {
+    return stepCount;
+  }
+
+  // 维度值在字典中的编号，不存在时加入字典
+  public int dimensionId(Slice dimension) {
+    Integer id = dimensionIds.get(dimension);
+    if (id != null) {
+      return id;
+    }
+    // 输入的 Slice 可能引用整个 Block 的内存，需要复制一份
+    Slice copy = Slices.copyOf(dimension);
+    id = dimensions.size();
+    dimensionIds.put(copy, id);
+    dimensions.add(copy);
+    dimensionBytes += copy.length() + DIMENSION_OVERHEAD;
+    return id;
+  }
+
+  public int dimensionCount() {
+    return dimensions.size();
+  }
+
+  public Slice getDimension(int dimensionId) {
+    return dimensions.get(dimensionId);
+  }
+
+  public void add(int dimensionId, long event) {
+    if (size == events.length) {
+      events = Arrays.copyOf(events, size * 2);
+      eventDimensions = Arrays.copyOf(eventDimensions, size * 2);
+    }
+    events[size] = event;
+    eventDimensions[size] = dimensionId;
+    size++;
+  }
+
+  public void addAll(FunnelByEvents other) {
+    int[] mapping = new int[other.dimensionCount()];
+    for (int i = 0; i < mapping.length; i++) {
+      mapping[i] = dimensionId(other.getDimension(i));
+    }
+    for (int i = 0; i < other.size; i++) {
+      add(mapping[other.eventDimensions[i]], other.events[i]);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // 返回底层数组，只有 [0, size()) 范围内的数据有效，调用方不能修改
+  public long[] getEvents() {
+    return events;
+  }
+
+  public int[] getEventDimensions() {
+    return eventDimensions;
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOf(events) + sizeOf(eventDimensions) + dimensionBytes;
+  }
+}
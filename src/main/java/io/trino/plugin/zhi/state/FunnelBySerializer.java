@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readZigZagLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeZigZagLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：
+ * <pre>
+ * window          zigzag varint
+ * stepCount       varint
+ * dimensionCount  varint
+ * dimensions      每个维度值为 varint 长度 + UTF-8 字节，顺序即维度编号
+ * size            varint
+ * events          每个事件为 varint 维度编号 + zigzag varint 事件编码
+ * </pre>
+ */
+public class FunnelBySerializer implements AccumulatorStateSerializer<FunnelByState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(FunnelByState state, BlockBuilder out) {
+    FunnelByEvents events = state.get();
+    if (events == null) {
+      out.appendNull();
+      return;
+    }
+
+    int size = events.size();
+    DynamicSliceOutput output = new DynamicSliceOutput(16 + size * 8);
+    writeZigZagLong(output, events.getWindow());
+    writeVarInt(output, events.getStepCount());
+    writeVarInt(output, events.dimensionCount());
+    for (int i = 0; i < events.dimensionCount(); i++) {
+      Slice dimension = events.getDimension(i);
+      writeVarInt(output, dimension.length());
+      output.writeBytes(dimension);
+    }
+    writeVarInt(output, size);
+    long[] values = events.getEvents();
+    int[] dimensionIds = events.getEventDimensions();
+    for (int i = 0; i < size; i++) {
+      writeVarInt(output, dimensionIds[i]);
+      writeZigZagLong(output, values[i]);
+    }
+
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, FunnelByState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    SliceInput input = VARBINARY.getSlice(block, index).getInput();
+    long window = readZigZagLong(input);
+    int stepCount = readVarInt(input);
+    FunnelByEvents events = new FunnelByEvents(window, stepCount);
+    int dimensionCount = readVarInt(input);
+    for (int i = 0; i < dimensionCount; i++) {
+      events.dimensionId(input.readSlice(readVarInt(input)));
+    }
+    int size = readVarInt(input);
+    for (int i = 0; i < size; i++) {
+      int dimensionId = readVarInt(input);
+      events.add(dimensionId, readZigZagLong(input));
+    }
+    state.set(events);
+  }
+}
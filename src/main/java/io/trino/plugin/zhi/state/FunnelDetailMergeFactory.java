@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import org.openjdk.jol.info.ClassLayout;
+
+public class FunnelDetailMergeFactory implements AccumulatorStateFactory<FunnelDetailMergeState> {
+  @Override
+  public FunnelDetailMergeState createSingleState() {
+    return new SingleFunnelDetailMergeState();
+  }
+
+  @Override
+  public Class<? extends FunnelDetailMergeState> getSingleStateClass() {
+    return SingleFunnelDetailMergeState.class;
+  }
+
+  @Override
+  public FunnelDetailMergeState createGroupedState() {
+    return new GroupedFunnelDetailMergeState();
+  }
+
+  @Override
+  public Class<? extends FunnelDetailMergeState> getGroupedStateClass() {
+    return GroupedFunnelDetailMergeState.class;
+  }
+
+  public static class GroupedFunnelDetailMergeState
+      implements GroupedAccumulatorState, FunnelDetailMergeState {
+    private final ObjectBigArray<FunnelDetailStats> values = new ObjectBigArray<>();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      values.ensureCapacity(size);
+    }
+
+    @Override
+    public FunnelDetailStats get() {
+      return values.get(groupId);
+    }
+
+    @Override
+    public void set(FunnelDetailStats stats) {
+      FunnelDetailStats previous = values.get(groupId);
+      if (previous != null) {
+        memoryUsage -= previous.getEstimatedSize();
+      }
+      memoryUsage += stats.getEstimatedSize();
+      values.set(groupId, stats);
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+      memoryUsage += memory;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + values.sizeOf();
+    }
+  }
+
+  public static class SingleFunnelDetailMergeState
+      implements FunnelDetailMergeState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleFunnelDetailMergeState.class).instanceSize();
+
+    private FunnelDetailStats stats;
+
+    @Override
+    public FunnelDetailStats get() {
+      return stats;
+    }
+
+    @Override
+    public void set(FunnelDetailStats stats) {
+      this.stats = stats;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (stats == null ? 0 : stats.getEstimatedSize());
+    }
+  }
+}
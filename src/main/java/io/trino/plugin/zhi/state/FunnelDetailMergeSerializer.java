@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：stepCount varint，之后每一步依次是 count varint、sum（8 字节 double）、
+ * BUCKET_COUNT 个桶的次数 varint。
+ */
+public class FunnelDetailMergeSerializer implements AccumulatorStateSerializer<FunnelDetailMergeState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(FunnelDetailMergeState state, BlockBuilder out) {
+    FunnelDetailStats stats = state.get();
+    if (stats == null) {
+      out.appendNull();
+      return;
+    }
+
+    int stepCount = stats.stepCount();
+    DynamicSliceOutput output = new DynamicSliceOutput(1 + stepCount * (FunnelDetailStats.BUCKET_COUNT + 10));
+    writeVarInt(output, stepCount);
+    for (int step = 1; step <= stepCount; step++) {
+      writeVarLong(output, stats.getCount(step));
+      output.writeDouble(stats.getSum(step));
+      for (int bucket = 0; bucket < FunnelDetailStats.BUCKET_COUNT; bucket++) {
+        writeVarLong(output, stats.getHistogram(step, bucket));
+      }
+    }
+
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, FunnelDetailMergeState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    SliceInput input = VARBINARY.getSlice(block, index).getInput();
+    FunnelDetailStats stats = new FunnelDetailStats();
+    int stepCount = readVarInt(input);
+    long[] histogram = new long[FunnelDetailStats.BUCKET_COUNT];
+    for (int step = 1; step <= stepCount; step++) {
+      long count = readVarLong(input);
+      double sum = input.readDouble();
+      for (int bucket = 0; bucket < histogram.length; bucket++) {
+        histogram[bucket] = readVarLong(input);
+      }
+      stats.set(step, count, sum, histogram);
+    }
+    state.set(stats);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * funnel_detail_merge 单个分组的统计：每一步耗时的次数、总和以及固定分桶的直方图。
+ * 下标 j - 1 对应第 j 步（相对上一步的耗时），直方图按步骤依次排列，每一步 BUCKET_COUNT 个桶。
+ */
+public final class FunnelDetailStats {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(FunnelDetailStats.class).instanceSize();
+  // 直方图各个桶的上界（秒，不含），最后一个桶没有上界
+  private static final double[] BUCKET_BOUNDS = {1, 10, 60, 300, 1800, 3600, 86400};
+  public static final int BUCKET_COUNT = BUCKET_BOUNDS.length + 1;
+
+  private long[] counts = new long[0];
+  private double[] sums = new double[0];
+  private long[] histograms = new long[0];
+
+  // 耗时所在的桶
+  public static int bucketOf(double seconds) {
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS.length && seconds >= BUCKET_BOUNDS[bucket]) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  public int stepCount() {
+    return counts.length;
+  }
+
+  public void add(int step, double seconds) {
+    ensureSteps(step);
+    counts[step - 1]++;
+    sums[step - 1] += seconds;
+    histograms[(step - 1) * BUCKET_COUNT + bucketOf(seconds)]++;
+  }
+
+  public void addAll(FunnelDetailStats other) {
+    ensureSteps(other.stepCount());
+    for (int i = 0; i < other.counts.length; i++) {
+      counts[i] += other.counts[i];
+      sums[i] += other.sums[i];
+    }
+    for (int i = 0; i < other.histograms.length; i++) {
+      histograms[i] += other.histograms[i];
+    }
+  }
+
+  // 直接设置某一步的统计，用于反序列化
+  public void set(int step, long count, double sum, long[] histogram) {
+    ensureSteps(step);
+    counts[step - 1] = count;
+    sums[step - 1] = sum;
+    System.arraycopy(histogram, 0, histograms, (step - 1) * BUCKET_COUNT, BUCKET_COUNT);
+  }
+
+  public long getCount(int step) {
+    return counts[step - 1];
+  }
+
+  public double getSum(int step) {
+    return sums[step - 1];
+  }
+
+  public long getHistogram(int step, int bucket) {
+    return histograms[(step - 1) * BUCKET_COUNT + bucket];
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOf(counts) + sizeOf(sums) + sizeOf(histograms);
+  }
+
+  private void ensureSteps(int steps) {
+    if (steps > counts.length) {
+      counts = Arrays.copyOf(counts, steps);
+      sums = Arrays.copyOf(sums, steps);
+      histograms = Arrays.copyOf(histograms, steps * BUCKET_COUNT);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+/**
+ * 漏斗事件的编码：一个事件压缩成一个 long，高 56 位是时间，低 8 位是步骤下标。
+ * 按 long 排序即按 (时间, 步骤) 排序。
+ */
+public class FunnelEvents {
+  public static final int STEP_BITS = 8;
+  public static final int MAX_STEPS = 1 << STEP_BITS;
+  private static final long STEP_MASK = MAX_STEPS - 1;
+
+  private FunnelEvents() {
+  }
+
+  public static long encode(long time, int step) {
+    return (time << STEP_BITS) | step;
+  }
+
+  public static long time(long event) {
+    return event >> STEP_BITS;
+  }
+
+  public static int step(long event) {
+    return (int) (event & STEP_MASK);
+  }
+}
@@ -14,5 +14,395 @@
 
 package io.trino.plugin.zhi.state;
 
-public class FunnelFactory {
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import io.trino.array.BooleanBigArray;
+import io.trino.array.IntBigArray;
+import io.trino.array.LongBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+public class FunnelFactory implements AccumulatorStateFactory<FunnelState> {
+  private static final int INITIAL_CAPACITY = 4;
+  private static final int MODE_SHIFT = 16;
+  private static final int STEP_COUNT_MASK = (1 << MODE_SHIFT) - 1;
+
+  @Override
+  public FunnelState createSingleState() {
+    return new SingleFunnelState();
+  }
+
+  @Override
+  public Class<? extends FunnelState> getSingleStateClass() {
+    return SingleFunnelState.class;
+  }
+
+  @Override
+  public FunnelState createGroupedState() {
+    return new GroupedFunnelState();
+  }
+
+  @Override
+  public Class<? extends FunnelState> getGroupedStateClass() {
+    return GroupedFunnelState.class;
+  }
+
+  // 容量按倍数扩容，追加均摊 O(1)
+  private static long[] grow(long[] events, int minCapacity) {
+    if (events == null) {
+      return new long[Math.max(INITIAL_CAPACITY, minCapacity)];
+    }
+    return Arrays.copyOf(events, Math.max(events.length * 2, minCapacity));
+  }
+
+  /**
+   * 所有分组的事件都保存在同一个共享的 {@link LongBigArray} 里，每个分组占用其中一段连续区间，
+   * 区间长度是 2 的幂。分组的事件超过区间容量时搬到两倍大小的新区间，旧区间挂到对应大小的空闲链表上
+   * 供其它分组复用（空闲区间的第一个位置保存链表中下一个区间的偏移）。
+   * 这样不会为每个分组创建单独的数组对象，内存基本等于事件本身的大小，并且可以准确统计。
+   */
+  public static class GroupedFunnelState
+      implements GroupedAccumulatorState, FunnelState {
+    private static final int MAX_SIZE_CLASS = 31;
+    private static final long NO_SEGMENT = -1;
+
+    private final LongBigArray slab = new LongBigArray();
+    // 按区间大小（log2）分类的空闲链表头
+    private final long[] freeSegments = new long[MAX_SIZE_CLASS + 1];
+    private long slabSize;
+
+    private final LongBigArray offsets = new LongBigArray(NO_SEGMENT);
+    private final IntBigArray sizes = new IntBigArray();
+    // 区间容量的 log2，只有 offsets 不为 NO_SEGMENT 时有效
+    private final IntBigArray sizeClasses = new IntBigArray();
+    private final LongBigArray windows = new LongBigArray();
+    // 低 16 位是步骤个数，0 表示该分组还没有初始化，高 16 位是计算模式
+    private final IntBigArray stepCounts = new IntBigArray();
+    private final IntBigArray depths = new IntBigArray();
+    private final BooleanBigArray unsorted = new BooleanBigArray();
+    private final IntBigArray compactionThresholds = new IntBigArray();
+
+    // getEvents 返回的临时数组，在各分组之间复用
+    private long[] scratch = new long[INITIAL_CAPACITY];
+    private long groupId;
+
+    public GroupedFunnelState() {
+      Arrays.fill(freeSegments, NO_SEGMENT);
+    }
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      offsets.ensureCapacity(size);
+      sizes.ensureCapacity(size);
+      sizeClasses.ensureCapacity(size);
+      windows.ensureCapacity(size);
+      stepCounts.ensureCapacity(size);
+      depths.ensureCapacity(size);
+      unsorted.ensureCapacity(size);
+      compactionThresholds.ensureCapacity(size);
+    }
+
+    @Override
+    public boolean isNull() {
+      return stepCounts.get(groupId) == 0;
+    }
+
+    @Override
+    public void init(long window, int stepCount, int mode) {
+      windows.set(groupId, window);
+      stepCounts.set(groupId, stepCount | mode << MODE_SHIFT);
+    }
+
+    @Override
+    public long getWindow() {
+      return windows.get(groupId);
+    }
+
+    @Override
+    public int getStepCount() {
+      return stepCounts.get(groupId) & STEP_COUNT_MASK;
+    }
+
+    @Override
+    public int getMode() {
+      return stepCounts.get(groupId) >>> MODE_SHIFT;
+    }
+
+    @Override
+    public int getDepth() {
+      return depths.get(groupId);
+    }
+
+    @Override
+    public void setDepth(int depth) {
+      depths.set(groupId, depth);
+    }
+
+    @Override
+    public int size() {
+      return sizes.get(groupId);
+    }
+
+    @Override
+    public void add(long event) {
+      long offset = offsets.get(groupId);
+      int size = sizes.get(groupId);
+      if (offset == NO_SEGMENT || size == 1 << sizeClasses.get(groupId)) {
+        offset = relocate(offset, size, size + 1);
+      }
+      if (size > 0 && event < slab.get(offset + size - 1)) {
+        unsorted.set(groupId, true);
+      }
+      slab.set(offset + size, event);
+      sizes.set(groupId, size + 1);
+    }
+
+    @Override
+    public long[] getEvents() {
+      int size = sizes.get(groupId);
+      if (scratch.length < size) {
+        scratch = grow(scratch, size);
+      }
+      long offset = offsets.get(groupId);
+      for (int i = 0; i < size; i++) {
+        scratch[i] = slab.get(offset + i);
+      }
+      return scratch;
+    }
+
+    @Override
+    public long getLastEvent() {
+      return slab.get(offsets.get(groupId) + sizes.get(groupId) - 1);
+    }
+
+    @Override
+    public boolean isSorted() {
+      return !unsorted.get(groupId);
+    }
+
+    @Override
+    public void sort() {
+      if (unsorted.get(groupId)) {
+        int size = sizes.get(groupId);
+        long[] events = getEvents();
+        Arrays.sort(events, 0, size);
+        long offset = offsets.get(groupId);
+        for (int i = 0; i < size; i++) {
+          slab.set(offset + i, events[i]);
+        }
+        unsorted.set(groupId, false);
+      }
+    }
+
+    @Override
+    public void setSortedEvents(long[] sortedEvents, int size) {
+      long offset = offsets.get(groupId);
+      if (size == 0) {
+        clear();
+        return;
+      }
+      // 放不下或者压缩后只用到不到四分之一时换一个区间，旧数据会被整体覆盖，不需要搬运
+      if (offset == NO_SEGMENT || size > 1 << sizeClasses.get(groupId)
+          || (size < 1 << sizeClasses.get(groupId) >> 2 && 1 << sizeClasses.get(groupId) > INITIAL_CAPACITY)) {
+        offset = relocate(offset, 0, size);
+      }
+      for (int i = 0; i < size; i++) {
+        slab.set(offset + i, sortedEvents[i]);
+      }
+      sizes.set(groupId, size);
+      unsorted.set(groupId, false);
+    }
+
+    @Override
+    public void clear() {
+      long offset = offsets.get(groupId);
+      if (offset != NO_SEGMENT) {
+        release(offset, sizeClasses.get(groupId));
+        offsets.set(groupId, NO_SEGMENT);
+      }
+      sizes.set(groupId, 0);
+      unsorted.set(groupId, false);
+    }
+
+    @Override
+    public int getCompactionThreshold() {
+      return compactionThresholds.get(groupId);
+    }
+
+    @Override
+    public void setCompactionThreshold(int threshold) {
+      compactionThresholds.set(groupId, threshold);
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return slab.sizeOf() + sizeOf(freeSegments) + sizeOf(scratch) + offsets.sizeOf() + sizes.sizeOf()
+          + sizeClasses.sizeOf() + windows.sizeOf() + stepCounts.sizeOf() + depths.sizeOf() + unsorted.sizeOf()
+          + compactionThresholds.sizeOf();
+    }
+
+    // 为当前分组分配能容纳 minCapacity 个事件的区间，搬运前 size 个事件并释放旧区间
+    private long relocate(long offset, int size, int minCapacity) {
+      int sizeClass = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+      while (1 << sizeClass < minCapacity) {
+        sizeClass++;
+      }
+      long newOffset = allocate(sizeClass);
+      for (int i = 0; i < size; i++) {
+        slab.set(newOffset + i, slab.get(offset + i));
+      }
+      if (offset != NO_SEGMENT) {
+        release(offset, sizeClasses.get(groupId));
+      }
+      offsets.set(groupId, newOffset);
+      sizeClasses.set(groupId, sizeClass);
+      return newOffset;
+    }
+
+    private long allocate(int sizeClass) {
+      long offset = freeSegments[sizeClass];
+      if (offset != NO_SEGMENT) {
+        freeSegments[sizeClass] = slab.get(offset);
+        return offset;
+      }
+      offset = slabSize;
+      slabSize += 1L << sizeClass;
+      slab.ensureCapacity(slabSize);
+      return offset;
+    }
+
+    private void release(long offset, int sizeClass) {
+      slab.set(offset, freeSegments[sizeClass]);
+      freeSegments[sizeClass] = offset;
+    }
+  }
+
+  public static class SingleFunnelState
+      implements FunnelState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleFunnelState.class).instanceSize();
+
+    private long[] events;
+    private int size;
+    private long window;
+    private int stepCount;
+    private int mode;
+    private int depth;
+    private boolean unsorted;
+    private int compactionThreshold;
+
+    @Override
+    public boolean isNull() {
+      return stepCount == 0;
+    }
+
+    @Override
+    public void init(long window, int stepCount, int mode) {
+      this.window = window;
+      this.stepCount = stepCount;
+      this.mode = mode;
+    }
+
+    @Override
+    public long getWindow() {
+      return window;
+    }
+
+    @Override
+    public int getStepCount() {
+      return stepCount;
+    }
+
+    @Override
+    public int getMode() {
+      return mode;
+    }
+
+    @Override
+    public int getDepth() {
+      return depth;
+    }
+
+    @Override
+    public void setDepth(int depth) {
+      this.depth = depth;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void add(long event) {
+      if (events == null || size == events.length) {
+        events = grow(events, size + 1);
+      }
+      if (size > 0 && event < events[size - 1]) {
+        unsorted = true;
+      }
+      events[size++] = event;
+    }
+
+    @Override
+    public long[] getEvents() {
+      return events == null ? new long[0] : events;
+    }
+
+    @Override
+    public long getLastEvent() {
+      return events[size - 1];
+    }
+
+    @Override
+    public boolean isSorted() {
+      return !unsorted;
+    }
+
+    @Override
+    public void sort() {
+      if (unsorted) {
+        Arrays.sort(events, 0, size);
+        unsorted = false;
+      }
+    }
+
+    @Override
+    public void setSortedEvents(long[] sortedEvents, int size) {
+      // 压缩后只用到不到四分之一时缩容
+      this.events = size < sortedEvents.length >> 2 && sortedEvents.length > INITIAL_CAPACITY
+          ? Arrays.copyOf(sortedEvents, Math.max(size, INITIAL_CAPACITY)) : sortedEvents;
+      this.size = size;
+      this.unsorted = false;
+    }
+
+    @Override
+    public int getCompactionThreshold() {
+      return compactionThreshold;
+    }
+
+    @Override
+    public void setCompactionThreshold(int threshold) {
+      this.compactionThreshold = threshold;
+    }
+
+    @Override
+    public void clear() {
+      events = null;
+      size = 0;
+      unsorted = false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (events == null ? 0 : sizeOf(events));
+    }
+  }
 }
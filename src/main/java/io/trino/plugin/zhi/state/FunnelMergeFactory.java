@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import io.trino.array.IntBigArray;
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+public class FunnelMergeFactory implements AccumulatorStateFactory<FunnelMergeState> {
+  // 大多数漏斗不超过 8 步
+  private static final int INITIAL_CAPACITY = 8;
+
+  @Override
+  public FunnelMergeState createSingleState() {
+    return new SingleFunnelMergeState();
+  }
+
+  @Override
+  public Class<? extends FunnelMergeState> getSingleStateClass() {
+    return SingleFunnelMergeState.class;
+  }
+
+  @Override
+  public FunnelMergeState createGroupedState() {
+    return new GroupedFunnelMergeState();
+  }
+
+  @Override
+  public Class<? extends FunnelMergeState> getGroupedStateClass() {
+    return GroupedFunnelMergeState.class;
+  }
+
+  /**
+   * 每个分组单独保存一个直方图数组，按本分组出现的最大深度翻倍扩容，
+   * 个别深度很大的分组不会让其他分组跟着占用更多内存。
+   */
+  public static class GroupedFunnelMergeState
+      implements GroupedAccumulatorState, FunnelMergeState {
+    private final ObjectBigArray<long[]> counts = new ObjectBigArray<>();
+    private final IntBigArray maxDepths = new IntBigArray();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      counts.ensureCapacity(size);
+      maxDepths.ensureCapacity(size);
+    }
+
+    @Override
+    public void add(int depth, long count) {
+      long[] histogram = counts.get(groupId);
+      if (histogram == null || depth > histogram.length) {
+        long[] grown = histogram == null
+            ? new long[Math.max(depth, INITIAL_CAPACITY)]
+            : Arrays.copyOf(histogram, Math.max(depth, histogram.length * 2));
+        memoryUsage += sizeOf(grown) - (histogram == null ? 0 : sizeOf(histogram));
+        counts.set(groupId, grown);
+        histogram = grown;
+      }
+      histogram[depth - 1] += count;
+      if (depth > maxDepths.get(groupId)) {
+        maxDepths.set(groupId, depth);
+      }
+    }
+
+    @Override
+    public void set(long[] histogram, int maxDepth) {
+      long[] previous = counts.get(groupId);
+      memoryUsage += sizeOf(histogram) - (previous == null ? 0 : sizeOf(previous));
+      counts.set(groupId, histogram);
+      maxDepths.set(groupId, maxDepth);
+    }
+
+    @Override
+    public int getMaxDepth() {
+      return maxDepths.get(groupId);
+    }
+
+    @Override
+    public long getCount(int depth) {
+      long[] histogram = counts.get(groupId);
+      return histogram == null || depth > histogram.length ? 0 : histogram[depth - 1];
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + counts.sizeOf() + maxDepths.sizeOf();
+    }
+  }
+
+  public static class SingleFunnelMergeState
+      implements FunnelMergeState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleFunnelMergeState.class).instanceSize();
+
+    private long[] counts = new long[0];
+    private int maxDepth;
+
+    @Override
+    public void add(int depth, long count) {
+      if (depth > counts.length) {
+        counts = Arrays.copyOf(counts, Math.max(depth, counts.length * 2));
+      }
+      counts[depth - 1] += count;
+      maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public void set(long[] counts, int maxDepth) {
+      this.counts = counts;
+      this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public int getMaxDepth() {
+      return maxDepth;
+    }
+
+    @Override
+    public long getCount(int depth) {
+      return depth > counts.length ? 0 : counts[depth - 1];
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + sizeOf(counts);
+    }
+  }
+}
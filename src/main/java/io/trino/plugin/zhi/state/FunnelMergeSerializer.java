@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 定长序列化格式：maxDepth[4] 之后依次是深度 1 ~ maxDepth 的次数，每个 8 字节。
+ */
+public class FunnelMergeSerializer implements AccumulatorStateSerializer<FunnelMergeState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(FunnelMergeState state, BlockBuilder out) {
+    int maxDepth = state.getMaxDepth();
+    Slice slice = Slices.allocate(Integer.BYTES + maxDepth * Long.BYTES);
+    slice.setInt(0, maxDepth);
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      slice.setLong(Integer.BYTES + (depth - 1) * Long.BYTES, state.getCount(depth));
+    }
+    VARBINARY.writeSlice(out, slice);
+  }
+
+  @Override
+  public void deserialize(Block block, int index, FunnelMergeState state) {
+    Slice slice = VARBINARY.getSlice(block, index);
+    int maxDepth = slice.getInt(0);
+    // combine 时 Trino 对 block 的每个位置复用同一个临时状态，整体替换直方图而不是在上一行的基础上累加；
+    // retention_merge 中末尾的次数可能为 0，也要保留 maxDepth
+    long[] counts = new long[maxDepth];
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      counts[depth - 1] = slice.getLong(Integer.BYTES + (depth - 1) * Long.BYTES);
+    }
+    state.set(counts, maxDepth);
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.spi.function.AccumulatorState;
+import io.trino.spi.function.AccumulatorStateMetadata;
+
+/**
+ * funnel_merge 的聚合状态：每个漏斗深度出现的次数。
+ */
+@AccumulatorStateMetadata(stateSerializerClass = FunnelMergeSerializer.class, stateFactoryClass = FunnelMergeFactory.class)
+public interface FunnelMergeState extends AccumulatorState {
+  // 深度 depth（>= 1）出现的次数加上 count
+  void add(int depth, long count);
+
+  // 用 counts 的 [0, maxDepth) 整体替换当前的直方图，counts[i] 是深度 i + 1 的次数，之后归状态所有
+  void set(long[] counts, int maxDepth);
+
+  // 出现过的最大深度，0 表示还没有数据
+  int getMaxDepth();
+
+  long getCount(int depth);
+}
@@ -14,5 +14,143 @@
 
 package io.trino.plugin.zhi.state;
 
-public class FunnelSerializer {
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readZigZagLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeZigZagLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：
+ * <pre>
+ * window     zigzag varint
+ * stepCount  varint
+ * mode       varint，计算模式
+ * depth      varint，已经确认达到的深度
+ * size       varint
+ * times      第一个时间 zigzag varint，之后是排序后相邻时间的差值 varint
+ * steps      步骤下标按 bitsPerStep 位紧密排列，bitsPerStep = ceil(log2(stepCount))
+ * </pre>
+ */
+public class FunnelSerializer implements AccumulatorStateSerializer<FunnelState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(FunnelState state, BlockBuilder out) {
+    if (state.isNull()) {
+      out.appendNull();
+      return;
+    }
+
+    DynamicSliceOutput output = new DynamicSliceOutput(16 + state.size() * 2);
+    write(state, output);
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, FunnelState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    read(VARBINARY.getSlice(block, index).getInput(), state);
+  }
+
+  public static void write(FunnelState state, SliceOutput output) {
+    // 排序后时间差值都是非负的小数字，反序列化出来的状态也是有序的，combine 时可以直接归并
+    state.sort();
+    int size = state.size();
+    int stepCount = state.getStepCount();
+    long[] events = state.getEvents();
+
+    writeZigZagLong(output, state.getWindow());
+    writeVarInt(output, stepCount);
+    writeVarInt(output, state.getMode());
+    writeVarInt(output, state.getDepth());
+    writeVarInt(output, size);
+
+    long previous = 0;
+    for (int i = 0; i < size; i++) {
+      long time = FunnelEvents.time(events[i]);
+      if (i == 0) {
+        writeZigZagLong(output, time);
+      } else {
+        writeVarLong(output, time - previous);
+      }
+      previous = time;
+    }
+
+    int bitsPerStep = bitsPerStep(stepCount);
+    if (bitsPerStep > 0) {
+      long buffer = 0;
+      int bufferedBits = 0;
+      for (int i = 0; i < size; i++) {
+        buffer |= (long) FunnelEvents.step(events[i]) << bufferedBits;
+        bufferedBits += bitsPerStep;
+        while (bufferedBits >= Byte.SIZE) {
+          output.writeByte((int) buffer);
+          buffer >>>= Byte.SIZE;
+          bufferedBits -= Byte.SIZE;
+        }
+      }
+      if (bufferedBits > 0) {
+        output.writeByte((int) buffer);
+      }
+    }
+  }
+
+  public static void read(SliceInput input, FunnelState state) {
+    read(input, state, true);
+  }
+
+  // hasMode 为 false 时读取没有 mode 字段的旧格式，使用默认模式
+  public static void read(SliceInput input, FunnelState state, boolean hasMode) {
+    long window = readZigZagLong(input);
+    int stepCount = readVarInt(input);
+    int mode = hasMode ? readVarInt(input) : 0;
+    int depth = readVarInt(input);
+    int size = readVarInt(input);
+    // combine 时 Trino 对 block 的每个位置复用同一个临时状态，先清掉上一行留下的事件、深度和有序标记
+    state.clear();
+    state.setCompactionThreshold(0);
+    state.init(window, stepCount, mode);
+    state.setDepth(depth);
+
+    long[] times = new long[size];
+    for (int i = 0; i < size; i++) {
+      times[i] = i == 0 ? readZigZagLong(input) : times[i - 1] + readVarLong(input);
+    }
+
+    int bitsPerStep = bitsPerStep(stepCount);
+    long mask = (1L << bitsPerStep) - 1;
+    long buffer = 0;
+    int bufferedBits = 0;
+    for (int i = 0; i < size; i++) {
+      while (bufferedBits < bitsPerStep) {
+        buffer |= (long) input.readUnsignedByte() << bufferedBits;
+        bufferedBits += Byte.SIZE;
+      }
+      int step = (int) (buffer & mask);
+      buffer >>>= bitsPerStep;
+      bufferedBits -= bitsPerStep;
+      state.add(FunnelEvents.encode(times[i], step));
+    }
+  }
+
+  private static int bitsPerStep(int stepCount) {
+    return stepCount <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(stepCount - 1);
+  }
 }
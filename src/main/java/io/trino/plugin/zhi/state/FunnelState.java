@@ -15,9 +15,56 @@
 package io.trino.plugin.zhi.state;
 
 
+import io.trino.spi.function.AccumulatorState;
 import io.trino.spi.function.AccumulatorStateMetadata;
 
+/**
+ * funnel 的聚合状态：窗口期、步骤个数以及命中步骤的事件列表，
+ * 事件编码见 {@link FunnelEvents}。
+ */
 @AccumulatorStateMetadata(stateSerializerClass = FunnelSerializer.class, stateFactoryClass = FunnelFactory.class)
-public class FunnelState {
+public interface FunnelState extends AccumulatorState {
+  // 还没有初始化（没有输入过任何行）
+  boolean isNull();
+
+  void init(long window, int stepCount, int mode);
+
+  long getWindow();
+
+  int getStepCount();
+
+  // 计算模式，取值见 FunnelMode
+  int getMode();
+
+  // 已经确认达到的漏斗深度，达到步骤个数后不再需要保存事件
+  int getDepth();
+
+  void setDepth(int depth);
+
+  int size();
+
+  void add(long event);
+
+  // 返回底层数组或临时拷贝，只有 [0, size()) 范围内的数据有效，调用方修改后需要通过 setSortedEvents 写回，
+  // 也不能在下一次调用之后继续使用
+  long[] getEvents();
+
+  // 最后一个事件，size() 为 0 时不能调用
+  long getLastEvent();
+
+  // 事件是否已经按编码后的值有序，按时间顺序追加的事件始终有序
+  boolean isSorted();
+
+  void sort();
+
+  // 用排好序的 events 的 [0, size) 替换当前事件列表
+  void setSortedEvents(long[] events, int size);
+
+  // 下一次压缩事件列表时的事件数，0 表示使用默认值；不需要序列化
+  int getCompactionThreshold();
+
+  void setCompactionThreshold(int threshold);
 
+  // 释放事件列表
+  void clear();
 }
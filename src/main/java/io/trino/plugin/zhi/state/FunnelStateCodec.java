@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.TrinoException;
+
+/**
+ * funnel_state 返回的可持久化格式：1 字节版本号，之后是 {@link FunnelSerializer} 的序列化格式。
+ * 数据会长期保存在表里，格式变化时需要增加版本号，并继续支持读取旧版本。
+ */
+public final class FunnelStateCodec {
+  public static final int VERSION = 2;
+  // 版本 1 没有保存计算模式
+  private static final int VERSION_WITHOUT_MODE = 1;
+
+  private FunnelStateCodec() {
+  }
+
+  public static Slice encode(FunnelState state) {
+    DynamicSliceOutput output = new DynamicSliceOutput(17 + state.size() * 2);
+    output.writeByte(VERSION);
+    FunnelSerializer.write(state, output);
+    return output.slice();
+  }
+
+  // 覆盖 state 中原有的内容
+  public static void decode(Slice slice, FunnelState state) {
+    if (slice.length() == 0) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Invalid funnel state: empty");
+    }
+    SliceInput input = slice.getInput();
+    int version = input.readUnsignedByte();
+    if (version != VERSION && version != VERSION_WITHOUT_MODE) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Unsupported funnel state version: " + version);
+    }
+    try {
+      FunnelSerializer.read(input, state, version != VERSION_WITHOUT_MODE);
+    } catch (RuntimeException e) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Invalid funnel state", e);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.airlift.slice.Slice;
+import io.trino.spi.function.AccumulatorState;
+
+/**
+ * funnel_ordered 的聚合状态，由 Trino 生成实现。
+ * 起始事件合并成若干个覆盖区间 [start, start + window)，落在区间内的后续步骤都能和某个起始事件匹配；
+ * 还没有被覆盖、且步骤大于当前最大步骤的事件保存在 pending 中，等之后的起始事件到达时再匹配。
+ * 输入按时间有序时只保留第一个和最后一个区间，以及和步骤个数同阶的暂存事件；
+ * 出现乱序后不再丢弃，保存所有区间和暂存事件。
+ */
+public interface FunnelStreamState
+    extends AccumulatorState {
+  long getWindow();
+
+  void setWindow(long value);
+
+  // 步骤个数，0 表示还没有初始化
+  int getStepCount();
+
+  void setStepCount(int value);
+
+  int getMaxStep();
+
+  void setMaxStep(int value);
+
+  // 按起点排序、互不相交的覆盖区间，每个区间为 start[8] end[8]
+  Slice getIntervals();
+
+  void setIntervals(Slice value);
+
+  int getIntervalCount();
+
+  void setIntervalCount(int value);
+
+  // 等待匹配的事件，每个事件 8 字节，编码见 FunnelEvents
+  Slice getPending();
+
+  void setPending(Slice value);
+
+  int getPendingCount();
+
+  void setPendingCount(int value);
+
+  // 输入过的最晚的事件时间，没有事件时为 Long.MIN_VALUE
+  long getLastTime();
+
+  void setLastTime(long value);
+
+  // 是否出现过乱序的输入，之后不再压缩
+  boolean isOutOfOrder();
+
+  void setOutOfOrder(boolean value);
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * multi_funnel 单个分组的数据：每个事件只保存一次，包括时间和它命中的所有漏斗步骤的掩码。
+ * funnelStarts 中每个置位表示一个漏斗在掩码中的起始位置，totalSteps 是掩码的有效位数。
+ */
+public final class MultiFunnelEvents {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(MultiFunnelEvents.class).instanceSize();
+  private static final int INITIAL_CAPACITY = 4;
+
+  private final long window;
+  private final long funnelStarts;
+  private final int totalSteps;
+
+  private long[] times = new long[INITIAL_CAPACITY];
+  private long[] masks = new long[INITIAL_CAPACITY];
+  private int size;
+
+  public MultiFunnelEvents(long window, long funnelStarts, int totalSteps) {
+    this.window = window;
+    this.funnelStarts = funnelStarts;
+    this.totalSteps = totalSteps;
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  public long getFunnelStarts() {
+    return funnelStarts;
+  }
+
+  public int getTotalSteps() {
+    return totalSteps;
+  }
+
+  public void add(long time, long mask) {
+    if (size == times.length) {
+      times = Arrays.copyOf(times, size * 2);
+      masks = Arrays.copyOf(masks, size * 2);
+    }
+    times[size] = time;
+    masks[size] = mask;
+    size++;
+  }
+
+  public void addAll(MultiFunnelEvents other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.times[i], other.masks[i]);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // 返回底层数组，只有 [0, size()) 范围内的数据有效，调用方不能修改
+  public long[] getTimes() {
+    return times;
+  }
+
+  public long[] getMasks() {
+    return masks;
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOf(times) + sizeOf(masks);
+  }
+}
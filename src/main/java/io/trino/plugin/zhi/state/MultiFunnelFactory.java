@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import org.openjdk.jol.info.ClassLayout;
+
+public class MultiFunnelFactory implements AccumulatorStateFactory<MultiFunnelState> {
+  @Override
+  public MultiFunnelState createSingleState() {
+    return new SingleMultiFunnelState();
+  }
+
+  @Override
+  public Class<? extends MultiFunnelState> getSingleStateClass() {
+    return SingleMultiFunnelState.class;
+  }
+
+  @Override
+  public MultiFunnelState createGroupedState() {
+    return new GroupedMultiFunnelState();
+  }
+
+  @Override
+  public Class<? extends MultiFunnelState> getGroupedStateClass() {
+    return GroupedMultiFunnelState.class;
+  }
+
+  public static class GroupedMultiFunnelState
+      implements GroupedAccumulatorState, MultiFunnelState {
+    private final ObjectBigArray<MultiFunnelEvents> values = new ObjectBigArray<>();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      values.ensureCapacity(size);
+    }
+
+    @Override
+    public MultiFunnelEvents get() {
+      return values.get(groupId);
+    }
+
+    @Override
+    public void set(MultiFunnelEvents events) {
+      MultiFunnelEvents previous = values.get(groupId);
+      if (previous != null) {
+        memoryUsage -= previous.getEstimatedSize();
+      }
+      memoryUsage += events.getEstimatedSize();
+      values.set(groupId, events);
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+      memoryUsage += memory;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + values.sizeOf();
+    }
+  }
+
+  public static class SingleMultiFunnelState
+      implements MultiFunnelState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleMultiFunnelState.class).instanceSize();
+
+    private MultiFunnelEvents events;
+
+    @Override
+    public MultiFunnelEvents get() {
+      return events;
+    }
+
+    @Override
+    public void set(MultiFunnelEvents events) {
+      this.events = events;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (events == null ? 0 : events.getEstimatedSize());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readZigZagLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeZigZagLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：
+ * <pre>
+ * window        zigzag varint
+ * funnelStarts  varint（按无符号数编码）
+ * totalSteps    varint
+ * size          varint
+ * events        每个事件为和上一个事件的时间差 zigzag varint + 掩码 varint
+ * </pre>
+ */
+public class MultiFunnelSerializer implements AccumulatorStateSerializer<MultiFunnelState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(MultiFunnelState state, BlockBuilder out) {
+    MultiFunnelEvents events = state.get();
+    if (events == null) {
+      out.appendNull();
+      return;
+    }
+
+    int size = events.size();
+    long[] times = events.getTimes();
+    long[] masks = events.getMasks();
+    DynamicSliceOutput output = new DynamicSliceOutput(16 + size * 4);
+    writeZigZagLong(output, events.getWindow());
+    writeVarLong(output, events.getFunnelStarts());
+    writeVarInt(output, events.getTotalSteps());
+    writeVarInt(output, size);
+    long previous = 0;
+    for (int i = 0; i < size; i++) {
+      writeZigZagLong(output, times[i] - previous);
+      writeVarLong(output, masks[i]);
+      previous = times[i];
+    }
+
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, MultiFunnelState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    SliceInput input = VARBINARY.getSlice(block, index).getInput();
+    long window = readZigZagLong(input);
+    long funnelStarts = readVarLong(input);
+    int totalSteps = readVarInt(input);
+    MultiFunnelEvents events = new MultiFunnelEvents(window, funnelStarts, totalSteps);
+    int size = readVarInt(input);
+    long time = 0;
+    for (int i = 0; i < size; i++) {
+      time += readZigZagLong(input);
+      events.add(time, readVarLong(input));
+    }
+    state.set(events);
+  }
+}
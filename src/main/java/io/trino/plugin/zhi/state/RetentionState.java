@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.spi.function.AccumulatorState;
+
+/**
+ * retention 的聚合状态，由 Trino 生成实现，每个分组只占固定的几个字段。
+ * bits 的第 i 位表示 anchor + i 号时间桶中出现过事件：
+ * 出现首次事件后 anchor 是最早的首次事件所在的桶，第 0 位表示出现过首次事件；
+ * 在此之前 anchor 是最早的返回事件所在的桶。
+ */
+public interface RetentionState
+    extends AccumulatorState {
+  // 统计的桶数，0 表示还没有初始化
+  int getBuckets();
+
+  void setBuckets(int value);
+
+  boolean isAnchorSet();
+
+  void setAnchorSet(boolean value);
+
+  boolean isFirstSeen();
+
+  void setFirstSeen(boolean value);
+
+  long getAnchor();
+
+  void setAnchor(long value);
+
+  long getBits();
+
+  void setBits(long value);
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import org.openjdk.jol.info.ClassLayout;
+
+public class TermCountFactory implements AccumulatorStateFactory<TermCountState> {
+  @Override
+  public TermCountState createSingleState() {
+    return new SingleTermCountState();
+  }
+
+  @Override
+  public Class<? extends TermCountState> getSingleStateClass() {
+    return SingleTermCountState.class;
+  }
+
+  @Override
+  public TermCountState createGroupedState() {
+    return new GroupedTermCountState();
+  }
+
+  @Override
+  public Class<? extends TermCountState> getGroupedStateClass() {
+    return GroupedTermCountState.class;
+  }
+
+  public static class GroupedTermCountState
+      implements GroupedAccumulatorState, TermCountState {
+    private final ObjectBigArray<TermCounts> values = new ObjectBigArray<>();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      values.ensureCapacity(size);
+    }
+
+    @Override
+    public TermCounts get() {
+      return values.get(groupId);
+    }
+
+    @Override
+    public void set(TermCounts counts) {
+      TermCounts previous = values.get(groupId);
+      if (previous != null) {
+        memoryUsage -= previous.getEstimatedSize();
+      }
+      memoryUsage += counts.getEstimatedSize();
+      values.set(groupId, counts);
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+      memoryUsage += memory;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + values.sizeOf();
+    }
+  }
+
+  public static class SingleTermCountState
+      implements TermCountState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleTermCountState.class).instanceSize();
+
+    private TermCounts counts;
+
+    @Override
+    public TermCounts get() {
+      return counts;
+    }
+
+    @Override
+    public void set(TermCounts counts) {
+      this.counts = counts;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (counts == null ? 0 : counts.getEstimatedSize());
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式，每个不同的词只写一次：
+ * <pre>
+ * size    varint，不同词的个数
+ * terms   每个词为 varint 长度 + UTF-8 字节 + varint 次数，顺序即词的编号
+ * </pre>
+ * 反序列化时直接写入 {@link TermCounts}，不经过中间集合。
+ */
+public class TermCountSerializer implements AccumulatorStateSerializer<TermCountState> {
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(TermCountState state, BlockBuilder out) {
+    TermCounts counts = state.get();
+    if (counts == null) {
+      out.appendNull();
+      return;
+    }
+
+    int size = counts.size();
+    DynamicSliceOutput output = new DynamicSliceOutput(8 + size * 16);
+    writeVarInt(output, size);
+    for (int i = 0; i < size; i++) {
+      Slice term = counts.getTerm(i);
+      writeVarInt(output, term.length());
+      output.writeBytes(term);
+      writeVarLong(output, counts.getCount(i));
+    }
+
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, TermCountState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    SliceInput input = VARBINARY.getSlice(block, index).getInput();
+    int size = readVarInt(input);
+    TermCounts counts = new TermCounts(size);
+    for (int i = 0; i < size; i++) {
+      Slice term = input.readSlice(readVarInt(input));
+      counts.add(term, readVarLong(input));
+    }
+    state.set(counts);
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.spi.function.AccumulatorState;
+import io.trino.spi.function.AccumulatorStateMetadata;
+
+/**
+ * word_count 的聚合状态，内容见 {@link TermCounts}。
+ */
+@AccumulatorStateMetadata(stateSerializerClass = TermCountSerializer.class, stateFactoryClass = TermCountFactory.class)
+public interface TermCountState extends AccumulatorState {
+  // 还没有输入过任何行时返回 null
+  TermCounts get();
+
+  void set(TermCounts counts);
+
+  // 通过 get() 修改数据后调用，用于内存统计
+  void addMemoryUsage(long memory);
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+import static io.airlift.slice.SizeOf.sizeOfObjectArray;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * word_count 单个分组的数据：词（UTF-8 字节）-> 出现次数。
+ * 使用开放寻址的哈希表，次数保存在 long 数组中，每个不同的词只保存一次，
+ * 词按第一次出现的顺序连续存放，编号即下标。
+ */
+public final class TermCounts {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(TermCounts.class).instanceSize();
+  // 每个词除了本身字节以外的开销（Slice 对象和 byte[] 的对象头）
+  private static final long TERM_OVERHEAD = 64;
+  private static final int INITIAL_CAPACITY = 8;
+
+  private Slice[] terms;
+  private long[] hashes;
+  private long[] counts;
+  private int size;
+  private long termBytes;
+
+  // 哈希表中保存词的编号 + 1，0 表示空位，装载因子不超过 1/2
+  private int[] table;
+  private int mask;
+
+  public TermCounts() {
+    this(INITIAL_CAPACITY);
+  }
+
+  // 预先按词的个数分配空间，反序列化时不需要扩容
+  public TermCounts(int expectedSize) {
+    int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+    terms = new Slice[capacity];
+    hashes = new long[capacity];
+    counts = new long[capacity];
+    table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    mask = table.length - 1;
+  }
+
+  public void add(Slice term, long count) {
+    add(term, XxHash64.hash(term), count);
+  }
+
+  public void addAll(TermCounts other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.terms[i], other.hashes[i], other.counts[i]);
+    }
+  }
+
+  private void add(Slice term, long hash, long count) {
+    int position = (int) hash & mask;
+    while (table[position] != 0) {
+      int id = table[position] - 1;
+      if (hashes[id] == hash && terms[id].equals(term)) {
+        counts[id] += count;
+        return;
+      }
+      position = (position + 1) & mask;
+    }
+
+    if (size == terms.length) {
+      int capacity = size * 2;
+      terms = Arrays.copyOf(terms, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    }
+    // 输入的 Slice 可能引用整个 Block 的内存，需要复制一份
+    Slice copy = Slices.copyOf(term);
+    terms[size] = copy;
+    hashes[size] = hash;
+    counts[size] = count;
+    termBytes += copy.length() + TERM_OVERHEAD;
+    table[position] = ++size;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    mask = table.length - 1;
+    for (int id = 0; id < size; id++) {
+      int position = (int) hashes[id] & mask;
+      while (table[position] != 0) {
+        position = (position + 1) & mask;
+      }
+      table[position] = id + 1;
+    }
+  }
+
+  // 不同词的个数
+  public int size() {
+    return size;
+  }
+
+  public Slice getTerm(int id) {
+    return terms[id];
+  }
+
+  public long getCount(int id) {
+    return counts[id];
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOfObjectArray(terms.length) + sizeOf(hashes) + sizeOf(counts) + sizeOf(table) + termBytes;
+  }
+}
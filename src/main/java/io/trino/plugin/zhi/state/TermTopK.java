@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+import static io.airlift.slice.SizeOf.sizeOfObjectArray;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import java.util.Arrays;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * word_count_topk 单个分组的数据：Space-Saving 摘要，最多保存 capacity 个词的计数。
+ * <p>
+ * 新词到来且计数器已满时，替换计数最小的词，新词的计数为最小计数加上本次次数，误差记为最小计数。
+ * 设 N 为所有词出现的总次数、m 为 capacity，则对摘要中的每个词：
+ * count - error <= 真实次数 <= count，且 error <= N / m；
+ * 不在摘要中的词的真实次数不超过最小计数，因此次数大于 N / m 的词一定在摘要中。
+ * 两个摘要合并后以上性质仍然成立（N 为两边之和），见 {@link #addAll}。
+ */
+public final class TermTopK {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(TermTopK.class).instanceSize();
+  // 每个词除了本身字节以外的开销（Slice 对象和 byte[] 的对象头）
+  private static final long TERM_OVERHEAD = 64;
+
+  private final int capacity;
+  private final Slice[] terms;
+  private final long[] hashes;
+  private final long[] counts;
+  private final long[] errors;
+  private int size;
+  private long termBytes;
+
+  // 按计数排序的最小堆，保存词的编号；positions 为每个编号在堆中的位置
+  private final int[] heap;
+  private final int[] positions;
+
+  // 哈希表中保存词的编号 + 1，0 表示空位；词的个数不超过 capacity，不需要扩容
+  private final int[] table;
+  private final int mask;
+
+  public TermTopK(int capacity) {
+    this.capacity = capacity;
+    terms = new Slice[capacity];
+    hashes = new long[capacity];
+    counts = new long[capacity];
+    errors = new long[capacity];
+    heap = new int[capacity];
+    positions = new int[capacity];
+    table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    mask = table.length - 1;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void add(Slice term) {
+    long hash = XxHash64.hash(term);
+    int position = find(term, hash);
+    if (table[position] != 0) {
+      int id = table[position] - 1;
+      counts[id]++;
+      siftDown(positions[id]);
+    } else if (size < capacity) {
+      insert(position, term, hash, 1, 0);
+    } else {
+      // 替换计数最小的词，它的计数作为新词的误差
+      int id = heap[0];
+      long min = counts[id];
+      remove(find(terms[id], hashes[id]));
+      replace(id, find(term, hash), term, hash, min + 1, min);
+      siftDown(0);
+    }
+  }
+
+  /**
+   * 合并另一个摘要：词在一边缺失时，用那一边的最小计数（没有满时为 0）作为它在那一边的计数和误差的上界，
+   * 两边相加后只保留计数最大的 capacity 个词，因此误差上界是两边之和。
+   */
+  public void addAll(TermTopK other) {
+    long min = size < capacity ? 0 : counts[heap[0]];
+    long otherMin = other.size < other.capacity ? 0 : other.counts[other.heap[0]];
+
+    int total = size + other.size;
+    Slice[] mergedTerms = new Slice[total];
+    long[] mergedHashes = new long[total];
+    long[] mergedCounts = new long[total];
+    long[] mergedErrors = new long[total];
+    int merged = 0;
+    for (int id = 0; id < size; id++) {
+      int position = other.find(terms[id], hashes[id]);
+      int otherId = other.table[position] - 1;
+      mergedTerms[merged] = terms[id];
+      mergedHashes[merged] = hashes[id];
+      mergedCounts[merged] = counts[id] + (otherId < 0 ? otherMin : other.counts[otherId]);
+      mergedErrors[merged] = errors[id] + (otherId < 0 ? otherMin : other.errors[otherId]);
+      merged++;
+    }
+    for (int otherId = 0; otherId < other.size; otherId++) {
+      if (table[find(other.terms[otherId], other.hashes[otherId])] != 0) {
+        continue;
+      }
+      mergedTerms[merged] = other.terms[otherId];
+      mergedHashes[merged] = other.hashes[otherId];
+      mergedCounts[merged] = other.counts[otherId] + min;
+      mergedErrors[merged] = other.errors[otherId] + min;
+      merged++;
+    }
+
+    int[] order = orderByCount(mergedCounts, merged);
+    Arrays.fill(table, 0);
+    Arrays.fill(terms, null);
+    size = 0;
+    termBytes = 0;
+    for (int i = 0; i < Math.min(merged, capacity); i++) {
+      int from = order[i];
+      Slice term = mergedTerms[from];
+      long hash = mergedHashes[from];
+      insert(find(term, hash), term, hash, mergedCounts[from], mergedErrors[from]);
+    }
+  }
+
+  // 词出现次数的上界：在摘要中时为它的计数，否则为最小计数（没有满时为 0）
+  public long estimate(Slice term) {
+    int position = find(term, XxHash64.hash(term));
+    if (table[position] != 0) {
+      return counts[table[position] - 1];
+    }
+    return size < capacity ? 0 : counts[heap[0]];
+  }
+
+  // 反序列化时直接写入，调用方保证词不重复且个数不超过 capacity
+  void put(Slice term, long count, long error) {
+    long hash = XxHash64.hash(term);
+    insert(find(term, hash), term, hash, count, error);
+  }
+
+  private void insert(int position, Slice term, long hash, long count, long error) {
+    int id = size++;
+    replace(id, position, term, hash, count, error);
+    heap[id] = id;
+    positions[id] = id;
+    siftUp(id);
+  }
+
+  private void replace(int id, int position, Slice term, long hash, long count, long error) {
+    if (terms[id] != null) {
+      termBytes -= terms[id].length() + TERM_OVERHEAD;
+    }
+    // 输入的 Slice 可能引用整个 Block 的内存，需要复制一份
+    Slice copy = Slices.copyOf(term);
+    terms[id] = copy;
+    hashes[id] = hash;
+    counts[id] = count;
+    errors[id] = error;
+    termBytes += copy.length() + TERM_OVERHEAD;
+    table[position] = id + 1;
+  }
+
+  // 词所在的位置，不存在时返回应该插入的空位
+  private int find(Slice term, long hash) {
+    int position = (int) hash & mask;
+    while (table[position] != 0) {
+      int id = table[position] - 1;
+      if (hashes[id] == hash && terms[id].equals(term)) {
+        return position;
+      }
+      position = (position + 1) & mask;
+    }
+    return position;
+  }
+
+  // 线性探测的删除：把后面探测链上的词往前移，保证查找不会提前遇到空位
+  private void remove(int position) {
+    int hole = position;
+    int next = position;
+    while (true) {
+      next = (next + 1) & mask;
+      if (table[next] == 0) {
+        table[hole] = 0;
+        return;
+      }
+      int home = (int) hashes[table[next] - 1] & mask;
+      boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+      if (!reachable) {
+        table[hole] = table[next];
+        hole = next;
+      }
+    }
+  }
+
+  private void siftUp(int index) {
+    int id = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (counts[heap[parent]] <= counts[id]) {
+        break;
+      }
+      setHeap(index, heap[parent]);
+      index = parent;
+    }
+    setHeap(index, id);
+  }
+
+  private void siftDown(int index) {
+    int id = heap[index];
+    while (true) {
+      int child = index * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+        child++;
+      }
+      if (counts[id] <= counts[heap[child]]) {
+        break;
+      }
+      setHeap(index, heap[child]);
+      index = child;
+    }
+    setHeap(index, id);
+  }
+
+  private void setHeap(int index, int id) {
+    heap[index] = id;
+    positions[id] = index;
+  }
+
+  // 按计数从大到小排列的编号
+  public int[] orderByCount() {
+    return orderByCount(counts, size);
+  }
+
+  private static int[] orderByCount(long[] values, int length) {
+    Integer[] boxed = new Integer[length];
+    for (int i = 0; i < length; i++) {
+      boxed[i] = i;
+    }
+    Arrays.sort(boxed, (left, right) -> Long.compare(values[right], values[left]));
+    int[] order = new int[length];
+    for (int i = 0; i < length; i++) {
+      order[i] = boxed[i];
+    }
+    return order;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Slice getTerm(int id) {
+    return terms[id];
+  }
+
+  public long getCount(int id) {
+    return counts[id];
+  }
+
+  public long getError(int id) {
+    return errors[id];
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOfObjectArray(capacity) + sizeOf(hashes) + sizeOf(counts) + sizeOf(errors)
+        + sizeOf(heap) + sizeOf(positions) + sizeOf(table) + termBytes;
+  }
+}
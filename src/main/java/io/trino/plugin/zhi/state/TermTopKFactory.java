@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import org.openjdk.jol.info.ClassLayout;
+
+public class TermTopKFactory implements AccumulatorStateFactory<TermTopKState> {
+  @Override
+  public TermTopKState createSingleState() {
+    return new SingleTermTopKState();
+  }
+
+  @Override
+  public Class<? extends TermTopKState> getSingleStateClass() {
+    return SingleTermTopKState.class;
+  }
+
+  @Override
+  public TermTopKState createGroupedState() {
+    return new GroupedTermTopKState();
+  }
+
+  @Override
+  public Class<? extends TermTopKState> getGroupedStateClass() {
+    return GroupedTermTopKState.class;
+  }
+
+  public static class GroupedTermTopKState
+      implements GroupedAccumulatorState, TermTopKState {
+    private final ObjectBigArray<TermTopK> values = new ObjectBigArray<>();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      values.ensureCapacity(size);
+    }
+
+    @Override
+    public TermTopK get() {
+      return values.get(groupId);
+    }
+
+    @Override
+    public void set(TermTopK summary) {
+      TermTopK previous = values.get(groupId);
+      if (previous != null) {
+        memoryUsage -= previous.getEstimatedSize();
+      }
+      memoryUsage += summary.getEstimatedSize();
+      values.set(groupId, summary);
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+      memoryUsage += memory;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + values.sizeOf();
+    }
+  }
+
+  public static class SingleTermTopKState
+      implements TermTopKState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleTermTopKState.class).instanceSize();
+
+    private TermTopK summary;
+
+    @Override
+    public TermTopK get() {
+      return summary;
+    }
+
+    @Override
+    public void set(TermTopK summary) {
+      this.summary = summary;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (summary == null ? 0 : summary.getEstimatedSize());
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：
+ * <pre>
+ * capacity  varint
+ * size      varint
+ * terms     每个词为 varint 长度 + UTF-8 字节 + varint 计数 + varint 误差
+ * </pre>
+ */
+public class TermTopKSerializer implements AccumulatorStateSerializer<TermTopKState> {
+  // 也用于读取 word_sketch 中保存的候选词，防止错误的数据导致分配过大的内存
+  private static final int MAX_CAPACITY = 1 << 20;
+
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(TermTopKState state, BlockBuilder out) {
+    TermTopK summary = state.get();
+    if (summary == null) {
+      out.appendNull();
+      return;
+    }
+
+    DynamicSliceOutput output = new DynamicSliceOutput(8 + summary.size() * 16);
+    write(summary, output);
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, TermTopKState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    state.set(read(VARBINARY.getSlice(block, index).getInput()));
+  }
+
+  public static void write(TermTopK summary, SliceOutput output) {
+    int size = summary.size();
+    writeVarInt(output, summary.getCapacity());
+    writeVarInt(output, size);
+    for (int i = 0; i < size; i++) {
+      Slice term = summary.getTerm(i);
+      writeVarInt(output, term.length());
+      output.writeBytes(term);
+      writeVarLong(output, summary.getCount(i));
+      writeVarLong(output, summary.getError(i));
+    }
+  }
+
+  public static TermTopK read(SliceInput input) {
+    int capacity = readVarInt(input);
+    if (capacity < 1 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("Invalid top-k capacity: " + capacity);
+    }
+    TermTopK summary = new TermTopK(capacity);
+    int size = readVarInt(input);
+    if (size > capacity) {
+      throw new IllegalArgumentException("Invalid top-k size: " + size);
+    }
+    for (int i = 0; i < size; i++) {
+      Slice term = input.readSlice(readVarInt(input));
+      long count = readVarLong(input);
+      summary.put(term, count, readVarLong(input));
+    }
+    return summary;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+import org.openjdk.jol.info.ClassLayout;
+
+/**
+ * word_sketch 的数据：Count-Min sketch 加上一组候选高频词。
+ * <p>
+ * sketch 有 depth 行，每行 width 个计数器，词在每一行按哈希落到一个计数器上，估计值取所有行中的最小值。
+ * 设 N 为总词数，估计值不小于真实次数，并且以 1 - e^-depth 的概率不超过真实次数加上 e * N / width。
+ * 候选词是一个 Space-Saving 摘要（见 {@link TermTopK}），它给出的上界也参与取最小值，
+ * 同时可以列出可能的高频词，不需要事先知道要查询的词。
+ */
+public final class WordSketch {
+  private static final long INSTANCE_SIZE = ClassLayout.parseClass(WordSketch.class).instanceSize();
+
+  public static final int DEFAULT_DEPTH = 4;
+  public static final int DEFAULT_WIDTH = 2048;
+  public static final int DEFAULT_CANDIDATES = 256;
+
+  private final int depth;
+  private final int width;
+  // 按行连续存放，第 row 行第 column 个计数器在 row * width + column
+  private final long[] counters;
+  private final TermTopK candidates;
+  private long total;
+
+  public WordSketch() {
+    this(DEFAULT_DEPTH, DEFAULT_WIDTH, new TermTopK(DEFAULT_CANDIDATES));
+  }
+
+  WordSketch(int depth, int width, TermTopK candidates) {
+    this.depth = depth;
+    this.width = width;
+    this.counters = new long[depth * width];
+    this.candidates = candidates;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public TermTopK getCandidates() {
+    return candidates;
+  }
+
+  public void add(Slice term) {
+    long hash = XxHash64.hash(term);
+    for (int row = 0; row < depth; row++) {
+      counters[row * width + column(hash, row)]++;
+    }
+    total++;
+    candidates.add(term);
+  }
+
+  // 调用方需要保证两边的 depth、width 和候选词个数相同
+  public void merge(WordSketch other) {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] += other.counters[i];
+    }
+    total += other.total;
+    candidates.addAll(other.candidates);
+  }
+
+  public boolean isCompatible(WordSketch other) {
+    return depth == other.depth && width == other.width
+        && candidates.getCapacity() == other.candidates.getCapacity();
+  }
+
+  public long estimate(Slice term) {
+    long hash = XxHash64.hash(term);
+    long estimate = candidates.estimate(term);
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters[row * width + column(hash, row)]);
+    }
+    return estimate;
+  }
+
+  // 用一个 64 位哈希的高低两半组合出每一行的哈希：h1 + row * h2
+  private int column(long hash, int row) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    return Math.floorMod(h1 + row * h2, width);
+  }
+
+  long getCounter(int index) {
+    return counters[index];
+  }
+
+  void setCounter(int index, long value) {
+    counters[index] = value;
+  }
+
+  void setTotal(long total) {
+    this.total = total;
+  }
+
+  public long getEstimatedSize() {
+    return INSTANCE_SIZE + sizeOf(counters) + candidates.getEstimatedSize();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.trino.spi.TrinoException;
+
+/**
+ * word_sketch 返回的可持久化格式：1 字节版本号，之后是 {@link WordSketchSerializer} 的序列化格式。
+ * 数据会长期保存在表里，格式变化时需要增加版本号，并继续支持读取旧版本。
+ */
+public final class WordSketchCodec {
+  public static final int VERSION = 1;
+
+  private WordSketchCodec() {
+  }
+
+  public static Slice encode(WordSketch sketch) {
+    DynamicSliceOutput output = new DynamicSliceOutput(1 + sketch.getDepth() * sketch.getWidth() * 2);
+    output.writeByte(VERSION);
+    WordSketchSerializer.write(sketch, output);
+    return output.slice();
+  }
+
+  public static WordSketch decode(Slice slice) {
+    if (slice.length() == 0) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Invalid word sketch: empty");
+    }
+    SliceInput input = slice.getInput();
+    int version = input.readUnsignedByte();
+    if (version != VERSION) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Unsupported word sketch version: " + version);
+    }
+    try {
+      return WordSketchSerializer.read(input);
+    } catch (RuntimeException e) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Invalid word sketch", e);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.trino.plugin.zhi.state;
+
+import io.trino.array.ObjectBigArray;
+import io.trino.spi.function.AccumulatorStateFactory;
+import io.trino.spi.function.GroupedAccumulatorState;
+import org.openjdk.jol.info.ClassLayout;
+
+public class WordSketchFactory implements AccumulatorStateFactory<WordSketchState> {
+  @Override
+  public WordSketchState createSingleState() {
+    return new SingleWordSketchState();
+  }
+
+  @Override
+  public Class<? extends WordSketchState> getSingleStateClass() {
+    return SingleWordSketchState.class;
+  }
+
+  @Override
+  public WordSketchState createGroupedState() {
+    return new GroupedWordSketchState();
+  }
+
+  @Override
+  public Class<? extends WordSketchState> getGroupedStateClass() {
+    return GroupedWordSketchState.class;
+  }
+
+  public static class GroupedWordSketchState
+      implements GroupedAccumulatorState, WordSketchState {
+    private final ObjectBigArray<WordSketch> values = new ObjectBigArray<>();
+
+    private long memoryUsage;
+    private long groupId;
+
+    @Override
+    public void setGroupId(long groupId) {
+      this.groupId = groupId;
+    }
+
+    @Override
+    public void ensureCapacity(long size) {
+      values.ensureCapacity(size);
+    }
+
+    @Override
+    public WordSketch get() {
+      return values.get(groupId);
+    }
+
+    @Override
+    public void set(WordSketch sketch) {
+      WordSketch previous = values.get(groupId);
+      if (previous != null) {
+        memoryUsage -= previous.getEstimatedSize();
+      }
+      memoryUsage += sketch.getEstimatedSize();
+      values.set(groupId, sketch);
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+      memoryUsage += memory;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return memoryUsage + values.sizeOf();
+    }
+  }
+
+  public static class SingleWordSketchState
+      implements WordSketchState {
+    private static final long INSTANCE_SIZE =
+        ClassLayout.parseClass(SingleWordSketchState.class).instanceSize();
+
+    private WordSketch sketch;
+
+    @Override
+    public WordSketch get() {
+      return sketch;
+    }
+
+    @Override
+    public void set(WordSketch sketch) {
+      this.sketch = sketch;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return INSTANCE_SIZE + (sketch == null ? 0 : sketch.getEstimatedSize());
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.readVarLong;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarInt;
+import static io.trino.plugin.zhi.utils.VarIntUtils.writeVarLong;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AccumulatorStateSerializer;
+import io.trino.spi.type.Type;
+
+/**
+ * 序列化格式：
+ * <pre>
+ * depth       varint
+ * width       varint
+ * total       varint
+ * candidates  {@link TermTopKSerializer} 的格式
+ * counters    depth * width 个 varint，按行依次写入，大部分计数器很小，只占 1 ~ 2 字节
+ * </pre>
+ */
+public class WordSketchSerializer implements AccumulatorStateSerializer<WordSketchState> {
+  // 防止错误的数据导致分配过大的内存
+  private static final int MAX_DEPTH = 16;
+  private static final int MAX_WIDTH = 1 << 20;
+
+  @Override
+  public Type getSerializedType() {
+    return VARBINARY;
+  }
+
+  @Override
+  public void serialize(WordSketchState state, BlockBuilder out) {
+    WordSketch sketch = state.get();
+    if (sketch == null) {
+      out.appendNull();
+      return;
+    }
+
+    DynamicSliceOutput output = new DynamicSliceOutput(sketch.getDepth() * sketch.getWidth() * 2);
+    write(sketch, output);
+    VARBINARY.writeSlice(out, output.slice());
+  }
+
+  @Override
+  public void deserialize(Block block, int index, WordSketchState state) {
+    if (block.isNull(index)) {
+      return;
+    }
+
+    state.set(read(VARBINARY.getSlice(block, index).getInput()));
+  }
+
+  public static void write(WordSketch sketch, SliceOutput output) {
+    writeVarInt(output, sketch.getDepth());
+    writeVarInt(output, sketch.getWidth());
+    writeVarLong(output, sketch.getTotal());
+    TermTopKSerializer.write(sketch.getCandidates(), output);
+    for (int i = 0; i < sketch.getDepth() * sketch.getWidth(); i++) {
+      writeVarLong(output, sketch.getCounter(i));
+    }
+  }
+
+  public static WordSketch read(SliceInput input) {
+    int depth = readVarInt(input);
+    int width = readVarInt(input);
+    if (depth < 1 || depth > MAX_DEPTH || width < 1 || width > MAX_WIDTH) {
+      throw new IllegalArgumentException("Invalid word sketch size: " + depth + " x " + width);
+    }
+    long total = readVarLong(input);
+    WordSketch sketch = new WordSketch(depth, width, TermTopKSerializer.read(input));
+    for (int i = 0; i < depth * width; i++) {
+      sketch.setCounter(i, readVarLong(input));
+    }
+    sketch.setTotal(total);
+    return sketch;
+  }
+}
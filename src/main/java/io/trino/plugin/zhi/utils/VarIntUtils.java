@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.utils;
+
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+
+/**
+ * 变长整数编码（LEB128），每个字节低 7 位存数据，最高位表示后面还有字节。
+ * 有符号数先做 zigzag 编码，让绝对值小的负数也能用很少的字节表示。
+ */
+public class VarIntUtils {
+  private VarIntUtils() {
+  }
+
+  public static void writeVarLong(SliceOutput out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  public static long readVarLong(SliceInput in) {
+    long value = 0;
+    int shift = 0;
+    while (true) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+  public static void writeVarInt(SliceOutput out, int value) {
+    writeVarLong(out, value & 0xFFFFFFFFL);
+  }
+
+  public static int readVarInt(SliceInput in) {
+    return (int) readVarLong(in);
+  }
+
+  public static void writeZigZagLong(SliceOutput out, long value) {
+    writeVarLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  public static long readZigZagLong(SliceInput in) {
+    long value = readVarLong(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
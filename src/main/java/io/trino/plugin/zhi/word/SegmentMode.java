@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+import java.util.function.Function;
+import org.ansj.domain.Result;
+import org.ansj.splitWord.analysis.BaseAnalysis;
+import org.ansj.splitWord.analysis.DicAnalysis;
+import org.ansj.splitWord.analysis.IndexAnalysis;
+import org.ansj.splitWord.analysis.NlpAnalysis;
+import org.ansj.splitWord.analysis.ToAnalysis;
+
+/**
+ * ansj 的分词方式，按速度从快到慢大致为：
+ * <ul>
+ * <li>base：最小颗粒度的基础分词，不做词性标注</li>
+ * <li>to：精准分词，速度和准确率比较均衡，适合大批量的统计</li>
+ * <li>dic：优先使用用户词典的分词</li>
+ * <li>index：面向索引的分词，会额外输出长词中包含的短词</li>
+ * <li>nlp：带新词发现和词性标注的 CRF 分词，最准确也最慢，不指定时使用</li>
+ * </ul>
+ */
+public enum SegmentMode {
+  BASE("base", BaseAnalysis::parse),
+  TO("to", ToAnalysis::parse),
+  DIC("dic", DicAnalysis::parse),
+  INDEX("index", IndexAnalysis::parse),
+  NLP("nlp", NlpAnalysis::parse);
+
+  private static final SegmentMode[] MODES = values();
+
+  private final Slice name;
+  private final Function<String, Result> analysis;
+
+  SegmentMode(String name, Function<String, Result> analysis) {
+    this.name = Slices.utf8Slice(name);
+    this.analysis = analysis;
+  }
+
+  // 逐字节比对，不创建字符串
+  public static SegmentMode parse(Slice mode) {
+    for (SegmentMode value : MODES) {
+      if (value.name.equals(mode)) {
+        return value;
+      }
+    }
+    throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Unknown segment mode: " + mode.toStringUtf8());
+  }
+
+  public Result segment(String text) {
+    return analysis.apply(text);
+  }
+}
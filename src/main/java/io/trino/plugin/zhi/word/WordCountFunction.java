@@ -15,10 +15,12 @@
 package io.trino.plugin.zhi.word;
 
 import static io.trino.plugin.zhi.word.WordTokenizeFunction.getNlpSeg;
+import static io.trino.plugin.zhi.word.WordTokenizeFunction.getSeg;
 
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
-import io.trino.plugin.zhi.state.StringListState;
+import io.trino.plugin.zhi.state.TermCountState;
+import io.trino.plugin.zhi.state.TermCounts;
 import io.trino.spi.block.BlockBuilder;
 import io.trino.spi.function.AggregationFunction;
 import io.trino.spi.function.CombineFunction;
@@ -28,67 +30,93 @@ import io.trino.spi.function.SqlType;
 import io.trino.spi.type.DoubleType;
 import io.trino.spi.type.StandardTypes;
 import io.trino.spi.type.VarcharType;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 //import io.airlift.log.Logger;
 
 @AggregationFunction("word_count")
 public class WordCountFunction {
   @InputFunction
-  public static void input(StringListState state, @SqlType(StandardTypes.VARCHAR) Slice word) {
+  public static void input(TermCountState state, @SqlType(StandardTypes.VARCHAR) Slice word) {
     if (null != word) {
-      List<String> list = getNlpSeg(word.toStringUtf8());
+      addTerms(state, getNlpSeg(word.toStringUtf8()));
+    }
+  }
+
+  @InputFunction
+  public static void input(TermCountState state, @SqlType(StandardTypes.VARCHAR) Slice word,
+                           @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addTerms(state, getSeg(word.toStringUtf8(), SegmentMode.parse(mode)));
+  }
 
-      state.getList().addAll(list);
+  private static void addTerms(TermCountState state, List<String> list) {
+    // 边输入边计数，状态大小只和不同词的个数有关
+    TermCounts counts = state.get();
+    if (counts == null) {
+      counts = new TermCounts();
+      state.set(counts);
+    }
+    long before = counts.getEstimatedSize();
+    for (String term : list) {
+      counts.add(Slices.utf8Slice(term), 1);
     }
+    state.addMemoryUsage(counts.getEstimatedSize() - before);
   }
 
   @CombineFunction
-  public static void combine(StringListState state, StringListState otherState) {
-    int listSize = state.getList().size();
-    int otherListSize = otherState.getList().size();
+  public static void combine(TermCountState state, TermCountState otherState) {
+    TermCounts other = otherState.get();
+    if (other == null) {
+      return;
+    }
 
-    if (listSize > 0 || otherListSize > 0) {
-      state.getList().addAll(otherState.getList());
+    TermCounts counts = state.get();
+    if (counts == null) {
+      counts = new TermCounts();
+      state.set(counts);
     }
+    long before = counts.getEstimatedSize();
+    counts.addAll(other);
+    state.addMemoryUsage(counts.getEstimatedSize() - before);
   }
 
   @OutputFunction(
       "array(row(word " + StandardTypes.VARCHAR + ",pOs " + StandardTypes.VARCHAR + ",full_word " +
           StandardTypes.VARCHAR + ",count " + StandardTypes.DOUBLE + "))")
-  public static void output(StringListState state, BlockBuilder out) {
-    if (state.getList().isEmpty()) {
+  public static void output(TermCountState state, BlockBuilder out) {
+    TermCounts counts = state.get();
+    if (counts == null || counts.size() == 0) {
       out.appendNull();
     } else {
-      List<String> list = state.getList();
-      Map<String, Long> counted = list
-          .stream()
-          .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-
       BlockBuilder blockBuilder = out.beginBlockEntry();
 
-      counted.forEach((key, val) -> {
+      for (int i = 0; i < counts.size(); i++) {
+        Slice term = counts.getTerm(i);
         BlockBuilder rowKeyBuilder = blockBuilder.beginBlockEntry();
-        List<String> array = Arrays.asList(key.split("/", 2));
-
-        VarcharType.VARCHAR.writeSlice(rowKeyBuilder, Slices.utf8Slice(array.get(0)));
-
-        if (array.size() == 1) {
-          VarcharType.VARCHAR.writeSlice(rowKeyBuilder, Slices.utf8Slice(""));
-        } else {
-          VarcharType.VARCHAR.writeSlice(rowKeyBuilder, Slices.utf8Slice(array.get(1)));
-        }
-        VarcharType.VARCHAR.writeSlice(rowKeyBuilder, Slices.utf8Slice(key));
-        DoubleType.DOUBLE.writeDouble(rowKeyBuilder, val);
+        writeTerm(rowKeyBuilder, term);
+        DoubleType.DOUBLE.writeDouble(rowKeyBuilder, counts.getCount(i));
 
         blockBuilder.closeEntry();
-      });
+      }
 
       out.closeEntry();
     }
   }
+
+  // 依次写入 word、pOs、full_word，词和词性用第一个 `/` 分隔
+  static void writeTerm(BlockBuilder rowKeyBuilder, Slice term) {
+    int separator = 0;
+    while (separator < term.length() && term.getByte(separator) != '/') {
+      separator++;
+    }
+
+    if (separator == term.length()) {
+      VarcharType.VARCHAR.writeSlice(rowKeyBuilder, term);
+      VarcharType.VARCHAR.writeSlice(rowKeyBuilder, Slices.utf8Slice(""));
+    } else {
+      VarcharType.VARCHAR.writeSlice(rowKeyBuilder, term.slice(0, separator));
+      VarcharType.VARCHAR.writeSlice(rowKeyBuilder, term.slice(separator + 1, term.length() - separator - 1));
+    }
+    VarcharType.VARCHAR.writeSlice(rowKeyBuilder, term);
+  }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import static io.trino.plugin.zhi.word.WordTokenizeFunction.getNlpSeg;
+import static io.trino.plugin.zhi.word.WordTokenizeFunction.getSeg;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.TermTopK;
+import io.trino.plugin.zhi.state.TermTopKState;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.DoubleType;
+import io.trino.spi.type.StandardTypes;
+import java.util.List;
+
+/**
+ * 和 word_count 相同的分词统计，只返回出现次数最多的 k 个词，每个分组的内存为 O(k)。
+ * 内部保存 2k 个 Space-Saving 计数器（见 {@link TermTopK}），设 N 为分组内的总词数，
+ * 返回的 count 不小于真实次数，且最多比真实次数多 error <= N / 2k。
+ */
+@AggregationFunction("word_count_topk")
+public class WordCountTopKFunction {
+  private static final int MAX_K = 10_000;
+  // 计数器个数是 k 的倍数，倍数越大排在前 k 的词越准确
+  private static final int COUNTERS_PER_TERM = 2;
+
+  @InputFunction
+  public static void input(TermTopKState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice word,
+                           @SqlType(StandardTypes.BIGINT) long k) {
+    addTerms(state, getNlpSeg(word.toStringUtf8()), k);
+  }
+
+  @InputFunction
+  public static void input(TermTopKState state,
+                           @SqlType(StandardTypes.VARCHAR) Slice word,
+                           @SqlType(StandardTypes.BIGINT) long k,
+                           @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addTerms(state, getSeg(word.toStringUtf8(), SegmentMode.parse(mode)), k);
+  }
+
+  private static void addTerms(TermTopKState state, List<String> list, long k) {
+    TermTopK summary = state.get();
+    if (summary == null) {
+      if (k < 1 || k > MAX_K) {
+        throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "k must be between 1 and " + MAX_K + ": " + k);
+      }
+      summary = new TermTopK((int) k * COUNTERS_PER_TERM);
+      state.set(summary);
+    } else if (summary.getCapacity() != k * COUNTERS_PER_TERM) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "k must be constant: " + k);
+    }
+
+    long before = summary.getEstimatedSize();
+    for (String term : list) {
+      summary.add(Slices.utf8Slice(term));
+    }
+    state.addMemoryUsage(summary.getEstimatedSize() - before);
+  }
+
+  @CombineFunction
+  public static void combine(TermTopKState state, TermTopKState otherState) {
+    TermTopK other = otherState.get();
+    if (other == null) {
+      return;
+    }
+
+    TermTopK summary = state.get();
+    if (summary == null) {
+      summary = new TermTopK(other.getCapacity());
+      state.set(summary);
+    } else if (summary.getCapacity() != other.getCapacity()) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "k must be constant: " + other.getCapacity() / COUNTERS_PER_TERM);
+    }
+    long before = summary.getEstimatedSize();
+    summary.addAll(other);
+    state.addMemoryUsage(summary.getEstimatedSize() - before);
+  }
+
+  @OutputFunction(
+      "array(row(word " + StandardTypes.VARCHAR + ",pOs " + StandardTypes.VARCHAR + ",full_word " +
+          StandardTypes.VARCHAR + ",count " + StandardTypes.DOUBLE + ",error " + StandardTypes.DOUBLE + "))")
+  public static void output(TermTopKState state, BlockBuilder out) {
+    TermTopK summary = state.get();
+    if (summary == null || summary.size() == 0) {
+      out.appendNull();
+      return;
+    }
+
+    int[] order = summary.orderByCount();
+    int k = Math.min(order.length, summary.getCapacity() / COUNTERS_PER_TERM);
+    BlockBuilder blockBuilder = out.beginBlockEntry();
+    for (int i = 0; i < k; i++) {
+      int id = order[i];
+      Slice term = summary.getTerm(id);
+      BlockBuilder rowKeyBuilder = blockBuilder.beginBlockEntry();
+      WordCountFunction.writeTerm(rowKeyBuilder, term);
+      DoubleType.DOUBLE.writeDouble(rowKeyBuilder, summary.getCount(id));
+      DoubleType.DOUBLE.writeDouble(rowKeyBuilder, summary.getError(id));
+      blockBuilder.closeEntry();
+    }
+    out.closeEntry();
+  }
+}
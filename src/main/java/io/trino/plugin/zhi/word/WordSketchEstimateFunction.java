@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.TermTopK;
+import io.trino.plugin.zhi.state.WordSketch;
+import io.trino.plugin.zhi.state.WordSketchCodec;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.Description;
+import io.trino.spi.function.ScalarFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+public final class WordSketchEstimateFunction {
+  private WordSketchEstimateFunction() {
+  }
+
+  @ScalarFunction("word_sketch_estimate")
+  @Description("Returns the estimated count of a word (word/pos) in a sketch built by word_sketch or word_sketch_merge")
+  @SqlType(StandardTypes.BIGINT)
+  public static long estimate(@SqlType(StandardTypes.VARBINARY) Slice value,
+                              @SqlType(StandardTypes.VARCHAR) Slice word) {
+    return WordSketchCodec.decode(value).estimate(word);
+  }
+
+  @ScalarFunction("word_sketch_candidates")
+  @Description("Returns the candidate frequent words (word/pos) of a sketch, most frequent first")
+  @SqlType("array(" + StandardTypes.VARCHAR + ")")
+  public static Block candidates(@SqlType(StandardTypes.VARBINARY) Slice value) {
+    WordSketch sketch = WordSketchCodec.decode(value);
+    TermTopK candidates = sketch.getCandidates();
+    int[] order = candidates.orderByCount();
+    BlockBuilder builder = VARCHAR.createBlockBuilder(null, order.length);
+    for (int id : order) {
+      VARCHAR.writeSlice(builder, candidates.getTerm(id));
+    }
+    return builder.build();
+  }
+}
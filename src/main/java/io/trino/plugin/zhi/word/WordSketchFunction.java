@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import static io.trino.plugin.zhi.word.WordTokenizeFunction.getNlpSeg;
+import static io.trino.plugin.zhi.word.WordTokenizeFunction.getSeg;
+import static io.trino.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.WordSketch;
+import io.trino.plugin.zhi.state.WordSketchCodec;
+import io.trino.plugin.zhi.state.WordSketchState;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+import java.util.List;
+
+/**
+ * 分词后把每个词（和 word_count 的 full_word 相同，即 词/词性）计入 {@link WordSketch}，
+ * 返回带版本号的 sketch，可以按天保存，之后用 word_sketch_merge 合并任意时间范围，不需要重新分词。
+ */
+@AggregationFunction("word_sketch")
+public class WordSketchFunction {
+  @InputFunction
+  public static void input(WordSketchState state, @SqlType(StandardTypes.VARCHAR) Slice word) {
+    addTerms(state, getNlpSeg(word.toStringUtf8()));
+  }
+
+  @InputFunction
+  public static void input(WordSketchState state, @SqlType(StandardTypes.VARCHAR) Slice word,
+                           @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    addTerms(state, getSeg(word.toStringUtf8(), SegmentMode.parse(mode)));
+  }
+
+  private static void addTerms(WordSketchState state, List<String> list) {
+    WordSketch sketch = state.get();
+    if (sketch == null) {
+      sketch = new WordSketch();
+      state.set(sketch);
+    }
+    long before = sketch.getEstimatedSize();
+    for (String term : list) {
+      sketch.add(Slices.utf8Slice(term));
+    }
+    state.addMemoryUsage(sketch.getEstimatedSize() - before);
+  }
+
+  @CombineFunction
+  public static void combine(WordSketchState state, WordSketchState otherState) {
+    merge(state, otherState.get());
+  }
+
+  static void merge(WordSketchState state, WordSketch other) {
+    if (other == null) {
+      return;
+    }
+
+    WordSketch sketch = state.get();
+    if (sketch == null) {
+      state.set(other);
+      return;
+    }
+    if (!sketch.isCompatible(other)) {
+      throw new TrinoException(INVALID_FUNCTION_ARGUMENT, "Cannot merge word sketches with different sizes");
+    }
+    long before = sketch.getEstimatedSize();
+    sketch.merge(other);
+    state.addMemoryUsage(sketch.getEstimatedSize() - before);
+  }
+
+  @OutputFunction(StandardTypes.VARBINARY)
+  public static void output(WordSketchState state, BlockBuilder out) {
+    WordSketch sketch = state.get();
+    if (sketch == null) {
+      out.appendNull();
+      return;
+    }
+
+    VARBINARY.writeSlice(out, WordSketchCodec.encode(sketch));
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import io.airlift.slice.Slice;
+import io.trino.plugin.zhi.state.WordSketchCodec;
+import io.trino.plugin.zhi.state.WordSketchState;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.function.AggregationFunction;
+import io.trino.spi.function.CombineFunction;
+import io.trino.spi.function.InputFunction;
+import io.trino.spi.function.OutputFunction;
+import io.trino.spi.function.SqlType;
+import io.trino.spi.type.StandardTypes;
+
+/**
+ * 合并 word_sketch 保存的 sketch，例如把每天的 sketch 合并成月度的 sketch，返回值格式不变。
+ */
+@AggregationFunction("word_sketch_merge")
+public class WordSketchMergeFunction {
+  @InputFunction
+  public static void input(WordSketchState state, @SqlType(StandardTypes.VARBINARY) Slice value) {
+    WordSketchFunction.merge(state, WordSketchCodec.decode(value));
+  }
+
+  @CombineFunction
+  public static void combine(WordSketchState state, WordSketchState otherState) {
+    WordSketchFunction.combine(state, otherState);
+  }
+
+  @OutputFunction(StandardTypes.VARBINARY)
+  public static void output(WordSketchState state, BlockBuilder out) {
+    WordSketchFunction.output(state, out);
+  }
+}
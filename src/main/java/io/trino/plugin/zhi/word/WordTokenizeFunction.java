@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.List;
 import org.ansj.domain.Result;
 import org.ansj.domain.Term;
-import org.ansj.splitWord.analysis.NlpAnalysis;
 
 public final class WordTokenizeFunction {
   @ScalarFunction("word_tokenize")
@@ -36,9 +35,22 @@ public final class WordTokenizeFunction {
     return Slices.utf8Slice(getNlpSeg(slice.toStringUtf8()).toString());
   }
 
+  @ScalarFunction("word_tokenize")
+  @Description("Returns the stem of a word in the Chinese language, using the given segment mode")
+  @SqlType(StandardTypes.VARCHAR)
+  public static Slice wordTokenize(
+      @SqlType(StandardTypes.VARCHAR) Slice slice,
+      @SqlType(StandardTypes.VARCHAR) Slice mode) {
+    return Slices.utf8Slice(getSeg(slice.toStringUtf8(), SegmentMode.parse(mode)).toString());
+  }
+
   public static List<String> getNlpSeg(String text) {
+    return getSeg(text, SegmentMode.NLP);
+  }
+
+  public static List<String> getSeg(String text, SegmentMode mode) {
     List<String> words = new ArrayList<>();
-    Result parse = NlpAnalysis.parse(text);
+    Result parse = mode.segment(text);
     for (Term term : parse) {
       if (null != term.getName() && !term.getName().trim().isEmpty()) {
         words.add(term.toString());
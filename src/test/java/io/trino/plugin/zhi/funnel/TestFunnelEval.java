@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.type.RowType;
+import java.util.List;
+import org.testng.annotations.Test;
+
+public class TestFunnelEval {
+  private static final RowType EVENT = RowType.anonymous(List.of(DOUBLE, VARCHAR));
+  private static final Slice STEPS = Slices.utf8Slice("a,b,c");
+
+  @Test
+  public void testEvaluate() {
+    Block array = events(
+        30.0, "c",
+        0.0, "a",
+        10.0, "b",
+        500.0, "x");
+    assertEquals(FunnelEval.funnelEval(array, 100, STEPS), Long.valueOf(3));
+    assertEquals(FunnelEval.funnelEval(array, 20, STEPS), Long.valueOf(2));
+  }
+
+  @Test
+  public void testNulls() {
+    // null 行不占用列中的位置，之后的行仍然要读到正确的时间和事件
+    BlockBuilder builder = EVENT.createBlockBuilder(null, 5);
+    appendEvent(builder, 0.0, "a");
+    builder.appendNull();
+    appendEvent(builder, null, "b");
+    appendEvent(builder, 20.0, null);
+    appendEvent(builder, 10.0, "b");
+    assertEquals(FunnelEval.funnelEval(builder.build(), 100, STEPS), Long.valueOf(2));
+  }
+
+  @Test
+  public void testEmpty() {
+    assertNull(FunnelEval.funnelEval(events(), 100, STEPS));
+  }
+
+  private static Block events(Object... values) {
+    BlockBuilder builder = EVENT.createBlockBuilder(null, values.length / 2);
+    for (int i = 0; i < values.length; i += 2) {
+      appendEvent(builder, (Double) values[i], (String) values[i + 1]);
+    }
+    return builder.build();
+  }
+
+  private static void appendEvent(BlockBuilder builder, Double time, String event) {
+    BlockBuilder row = builder.beginBlockEntry();
+    if (time == null) {
+      row.appendNull();
+    } else {
+      DOUBLE.writeDouble(row, time);
+    }
+    if (event == null) {
+      row.appendNull();
+    } else {
+      VARCHAR.writeSlice(row, Slices.utf8Slice(event));
+    }
+    builder.closeEntry();
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static org.testng.Assert.assertEquals;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.FunnelFactory;
+import io.trino.plugin.zhi.state.FunnelState;
+import io.trino.plugin.zhi.state.FunnelStateCodec;
+import io.trino.spi.TrinoException;
+import org.testng.annotations.Test;
+
+public class TestFunnelStateMerge {
+  private static final Slice STEPS = Slices.utf8Slice("a,b,c");
+
+  @Test
+  public void testMerge() {
+    FunnelState state = new FunnelFactory().createSingleState();
+    FunnelStateMerge.input(state, encode(100, 0, "a", 10, "b"));
+    FunnelStateMerge.input(state, encode(100, 20, "c"));
+    FunnelStateMerge.input(state, encode(100, 500, "a"));
+    assertEquals(Funnel.depth(state), 3);
+  }
+
+  @Test(expectedExceptions = TrinoException.class)
+  public void testMergeDifferentWindows() {
+    // 同样是 100 秒的窗口期，一个按秒、一个按毫秒传入
+    FunnelState state = new FunnelFactory().createSingleState();
+    FunnelStateMerge.input(state, encode(100, 0, "a"));
+    FunnelStateMerge.input(state, encode(100_000, 10_000, "b"));
+  }
+
+  @Test(expectedExceptions = TrinoException.class)
+  public void testCombineDifferentWindows() {
+    FunnelState state1 = new FunnelFactory().createSingleState();
+    FunnelStateCodec.decode(encode(100, 0, "a"), state1);
+    FunnelState state2 = new FunnelFactory().createSingleState();
+    FunnelStateCodec.decode(encode(100_000, 10_000, "b"), state2);
+    FunnelStateAggregation.combine(state1, state2);
+  }
+
+  private static Slice encode(double window, Object... events) {
+    FunnelState state = new FunnelFactory().createSingleState();
+    for (int i = 0; i < events.length; i += 2) {
+      FunnelStateAggregation.input(state, ((Number) events[i]).doubleValue(), window,
+          Slices.utf8Slice((String) events[i + 1]), STEPS);
+    }
+    return FunnelStateCodec.encode(state);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.util.StringJoiner;
+import org.testng.annotations.Test;
+
+public class TestFunnelSteps {
+  @Test
+  public void testMaxSteps() {
+    FunnelSteps steps = FunnelSteps.of(Slices.utf8Slice(names(FunnelEvents.MAX_STEPS)));
+    assertEquals(steps.stepCount(), FunnelEvents.MAX_STEPS);
+    assertEquals(steps.indexOf(Slices.utf8Slice("e255")), 255);
+
+    FunnelSteps blocks = FunnelSteps.of(blocks(FunnelEvents.MAX_STEPS));
+    assertEquals(blocks.stepCount(), FunnelEvents.MAX_STEPS);
+    assertEquals(blocks.indexOf(Slices.utf8Slice("e255")), 255);
+  }
+
+  @Test(expectedExceptions = TrinoException.class)
+  public void testTooManySteps() {
+    FunnelSteps.of(Slices.utf8Slice(names(FunnelEvents.MAX_STEPS + 1)));
+  }
+
+  @Test(expectedExceptions = TrinoException.class)
+  public void testTooManyStepBlocks() {
+    FunnelSteps.of(blocks(FunnelEvents.MAX_STEPS + 1));
+  }
+
+  private static String names(int count) {
+    StringJoiner names = new StringJoiner(",");
+    for (int i = 0; i < count; i++) {
+      names.add("e" + i);
+    }
+    return names.toString();
+  }
+
+  private static Block[] blocks(int count) {
+    Block[] blocks = new Block[count];
+    for (int i = 0; i < count; i++) {
+      BlockBuilder step = VARCHAR.createBlockBuilder(null, 1);
+      VARCHAR.writeSlice(step, Slices.utf8Slice("e" + i));
+      blocks[i] = step.build();
+    }
+    return blocks;
+  }
+}
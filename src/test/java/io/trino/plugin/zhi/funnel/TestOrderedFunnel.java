@@ -0,0 +1,316 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.plugin.zhi.state.FunnelEvents;
+import io.trino.plugin.zhi.state.FunnelStreamState;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.type.BigintType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+public class TestOrderedFunnel {
+  private static final Slice STEPS = Slices.utf8Slice("a,b,c,d");
+  private static final String[] NAMES = {"a", "b", "c", "d"};
+
+  @Test
+  public void testOrderedInput() {
+    TestingStreamState state = new TestingStreamState();
+    input(state, 0, 50, "a");
+    input(state, 10, 50, "b");
+    input(state, 20, 50, "d");
+    input(state, 30, 50, "c");
+    assertEquals(depth(state), 4);
+  }
+
+  @Test
+  public void testLateStepAfterLaterStart() {
+    // 起始事件 0 和 100 之后才到达 10 的 b，它和 0 的起始事件在窗口内
+    TestingStreamState state = new TestingStreamState();
+    input(state, 0, 50, "a");
+    input(state, 100, 50, "a");
+    input(state, 10, 50, "b");
+    assertEquals(depth(state), 2);
+  }
+
+  @Test
+  public void testLateStart() {
+    TestingStreamState state = new TestingStreamState();
+    input(state, 10, 50, "b");
+    input(state, 60, 50, "c");
+    input(state, 5, 50, "a");
+    assertEquals(depth(state), 2);
+    input(state, 20, 50, "a");
+    assertEquals(depth(state), 3);
+  }
+
+  @Test
+  public void testCombineWithoutStart() {
+    // 一个分片只有起始事件，另一个分片只有后续步骤
+    TestingStreamState left = new TestingStreamState();
+    input(left, 0, 50, "a");
+    TestingStreamState right = new TestingStreamState();
+    input(right, 5, 50, "b");
+    OrderedFunnel.combine(left, right);
+    assertEquals(depth(left), 2);
+
+    TestingStreamState reversed = new TestingStreamState();
+    input(reversed, 5, 50, "b");
+    TestingStreamState start = new TestingStreamState();
+    input(start, 0, 50, "a");
+    OrderedFunnel.combine(reversed, start);
+    assertEquals(depth(reversed), 2);
+  }
+
+  @Test
+  public void testWindowBoundary() {
+    TestingStreamState state = new TestingStreamState();
+    input(state, 50, 50, "b");
+    input(state, 0, 50, "a");
+    assertEquals(depth(state), 1);
+    input(state, 50, 50, "a");
+    assertEquals(depth(state), 2);
+  }
+
+  @Test
+  public void testWindowOverflow() {
+    // 时间加上窗口期超过 long 的范围时区间不能溢出成负数
+    TestingStreamState state = new TestingStreamState();
+    input(state, 1e9, 9e12, "a");
+    input(state, 1e9 + 10, 9e12, "b");
+    assertEquals(depth(state), 2);
+  }
+
+  @Test
+  public void testMemoryBoundedOnOrderedInput() {
+    Random random = new Random(7);
+    TestingStreamState state = new TestingStreamState();
+    long time = 0;
+    for (int i = 0; i < 100_000; i++) {
+      time += random.nextInt(30);
+      // 很少出现起始事件，且走不到最后一步，状态不会饱和
+      int step = random.nextInt(20) == 0 ? 0 : 1 + random.nextInt(NAMES.length - 2);
+      input(state, time, 10, NAMES[step]);
+      assertTrue(state.getIntervalCount() <= 2, "intervals " + state.getIntervalCount());
+      assertTrue(state.getPendingCount() <= NAMES.length + 1, "pending " + state.getPendingCount());
+    }
+    assertEquals(depth(state), 3);
+  }
+
+  @Test
+  public void testMatchesFunnelForOrderedSplits() {
+    Random random = new Random(42);
+    for (int iteration = 0; iteration < 20_000; iteration++) {
+      int window = 1 + random.nextInt(40);
+      List<long[]> rows = randomRows(random);
+      long expected = expectedDepth(rows, window);
+      rows.sort((left, right) -> Long.compare(left[0], right[0]));
+
+      // 每个分片内有序、分片之间时间范围不交错，以任意顺序合并
+      List<TestingStreamState> partials = new ArrayList<>();
+      TestingStreamState current = new TestingStreamState();
+      partials.add(current);
+      for (int i = 0; i < rows.size(); i++) {
+        long[] row = rows.get(i);
+        if (random.nextInt(4) == 0) {
+          current = new TestingStreamState();
+          partials.add(current);
+        }
+        input(current, row[0], window, NAMES[(int) row[1]]);
+      }
+      Collections.shuffle(partials, random);
+      TestingStreamState result = new TestingStreamState();
+      for (TestingStreamState partial : partials) {
+        OrderedFunnel.combine(result, partial);
+      }
+      if (!rows.isEmpty()) {
+        assertEquals(depth(result), expected, "iteration " + iteration);
+      }
+    }
+  }
+
+  @Test
+  public void testNeverOverCountsForAnyOrder() {
+    Random random = new Random(42);
+    for (int iteration = 0; iteration < 20_000; iteration++) {
+      int window = 1 + random.nextInt(40);
+      List<long[]> rows = randomRows(random);
+      long expected = expectedDepth(rows, window);
+      Collections.shuffle(rows, random);
+
+      List<TestingStreamState> partials = new ArrayList<>();
+      TestingStreamState current = new TestingStreamState();
+      partials.add(current);
+      for (long[] row : rows) {
+        if (random.nextInt(4) == 0) {
+          current = new TestingStreamState();
+          partials.add(current);
+        }
+        input(current, row[0], window, NAMES[(int) row[1]]);
+      }
+      TestingStreamState result = new TestingStreamState();
+      for (TestingStreamState partial : partials) {
+        OrderedFunnel.combine(result, partial);
+      }
+      if (!rows.isEmpty()) {
+        long depth = depth(result);
+        assertTrue(depth >= 1 && depth <= expected, "iteration " + iteration + ": " + depth + " > " + expected);
+      }
+    }
+  }
+
+  private static List<long[]> randomRows(Random random) {
+    int count = random.nextInt(30);
+    List<long[]> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add(new long[] {random.nextInt(200), random.nextInt(NAMES.length)});
+    }
+    return rows;
+  }
+
+  private static long expectedDepth(List<long[]> rows, int window) {
+    long[] events = new long[rows.size()];
+    for (int i = 0; i < events.length; i++) {
+      events[i] = FunnelEvents.encode(Base.toTicks(rows.get(i)[0]), (int) rows.get(i)[1]);
+    }
+    return FunnelEngine.maxDepth(events, events.length, Base.toTicks(window), NAMES.length);
+  }
+
+  private static void input(FunnelStreamState state, double time, double window, String event) {
+    OrderedFunnel.input(state, time, window, Slices.utf8Slice(event), STEPS);
+  }
+
+  private static long depth(FunnelStreamState state) {
+    BlockBuilder out = BigintType.BIGINT.createBlockBuilder(null, 1);
+    OrderedFunnel.output(state, out);
+    return BigintType.BIGINT.getLong(out.build(), 0);
+  }
+
+  private static class TestingStreamState
+      implements FunnelStreamState {
+    private long window;
+    private int stepCount;
+    private int maxStep;
+    private Slice intervals;
+    private int intervalCount;
+    private Slice pending;
+    private int pendingCount;
+    private long lastTime;
+    private boolean outOfOrder;
+
+    @Override
+    public long getWindow() {
+      return window;
+    }
+
+    @Override
+    public void setWindow(long value) {
+      window = value;
+    }
+
+    @Override
+    public int getStepCount() {
+      return stepCount;
+    }
+
+    @Override
+    public void setStepCount(int value) {
+      stepCount = value;
+    }
+
+    @Override
+    public int getMaxStep() {
+      return maxStep;
+    }
+
+    @Override
+    public void setMaxStep(int value) {
+      maxStep = value;
+    }
+
+    @Override
+    public Slice getIntervals() {
+      return intervals;
+    }
+
+    @Override
+    public void setIntervals(Slice value) {
+      intervals = value;
+    }
+
+    @Override
+    public int getIntervalCount() {
+      return intervalCount;
+    }
+
+    @Override
+    public void setIntervalCount(int value) {
+      intervalCount = value;
+    }
+
+    @Override
+    public Slice getPending() {
+      return pending;
+    }
+
+    @Override
+    public void setPending(Slice value) {
+      pending = value;
+    }
+
+    @Override
+    public int getPendingCount() {
+      return pendingCount;
+    }
+
+    @Override
+    public void setPendingCount(int value) {
+      pendingCount = value;
+    }
+
+    @Override
+    public long getLastTime() {
+      return lastTime;
+    }
+
+    @Override
+    public void setLastTime(long value) {
+      lastTime = value;
+    }
+
+    @Override
+    public boolean isOutOfOrder() {
+      return outOfOrder;
+    }
+
+    @Override
+    public void setOutOfOrder(boolean value) {
+      outOfOrder = value;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return 0;
+    }
+  }
+}
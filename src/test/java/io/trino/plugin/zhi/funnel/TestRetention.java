@@ -0,0 +1,267 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static io.trino.spi.type.BooleanType.BOOLEAN;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.trino.plugin.zhi.state.RetentionState;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import io.trino.spi.type.ArrayType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+public class TestRetention {
+  private static final ArrayType BOOLEAN_ARRAY = new ArrayType(BOOLEAN);
+
+  @Test
+  public void testOrderedInput() {
+    TestingRetentionState state = new TestingRetentionState();
+    input(state, 0, false, true, 3);
+    input(state, 10, true, false, 3);
+    input(state, 12, false, true, 3);
+    assertEquals(output(state), new boolean[] {true, false, true, false});
+  }
+
+  @Test
+  public void testReturnBeforeLaterFirst() {
+    // 返回事件 0 先确定了基准，12 超出了以 0 为基准的范围，之后才到达 10 的首次事件
+    TestingRetentionState state = new TestingRetentionState();
+    input(state, 0, false, true, 3);
+    input(state, 12, false, true, 3);
+    input(state, 10, true, false, 3);
+    assertLowerBound(output(state), new boolean[] {true, false, true, false});
+  }
+
+  @Test
+  public void testEarlierFirst() {
+    // 较晚的首次事件先到达，它的标记不能在基准前移后被当成返回事件
+    TestingRetentionState state = new TestingRetentionState();
+    input(state, 24, true, false, 2);
+    input(state, 22, true, false, 2);
+    assertEquals(output(state), new boolean[] {true, false, false});
+  }
+
+  @Test
+  public void testNoFirstEvent() {
+    TestingRetentionState state = new TestingRetentionState();
+    input(state, 0, false, true, 2);
+    input(state, 1, false, true, 2);
+    assertEquals(output(state), new boolean[] {false, false, false});
+  }
+
+  @Test
+  public void testOrderedInputIsExact() {
+    Random random = new Random(1);
+    for (int iteration = 0; iteration < 10_000; iteration++) {
+      int buckets = 1 + random.nextInt(6);
+      List<Event> events = events(random, 40, 0);
+      events.sort(Comparator.comparingLong(event -> event.bucket));
+      TestingRetentionState state = new TestingRetentionState();
+      for (Event event : events) {
+        input(state, event, buckets);
+      }
+      if (!events.isEmpty()) {
+        assertEquals(output(state), expected(events, buckets));
+      }
+    }
+  }
+
+  @Test
+  public void testSingleFirstBucketIsExact() {
+    // 首次事件都在同一个桶内且没有更早的返回事件时，任意顺序、任意分片都是精确的
+    Random random = new Random(2);
+    for (int iteration = 0; iteration < 10_000; iteration++) {
+      int buckets = 1 + random.nextInt(6);
+      long firstBucket = random.nextInt(10);
+      List<Event> events = new ArrayList<>();
+      for (Event event : events(random, 40, firstBucket)) {
+        events.add(new Event(event.first ? firstBucket : event.bucket, event.first, event.returned));
+      }
+      Collections.shuffle(events, random);
+      assertEquals(split(events, buckets, random), expected(events, buckets));
+    }
+  }
+
+  @Test
+  public void testNeverOverCounts() {
+    Random random = new Random(3);
+    for (int iteration = 0; iteration < 10_000; iteration++) {
+      int buckets = 1 + random.nextInt(6);
+      List<Event> events = events(random, 40, 0);
+      Collections.shuffle(events, random);
+      assertLowerBound(split(events, buckets, random), expected(events, buckets));
+    }
+  }
+
+  private static List<Event> events(Random random, int bound, long min) {
+    List<Event> events = new ArrayList<>();
+    int count = random.nextInt(12);
+    for (int i = 0; i < count; i++) {
+      events.add(new Event(min + random.nextInt(bound), random.nextInt(4) == 0, random.nextBoolean()));
+    }
+    return events;
+  }
+
+  private static boolean[] split(List<Event> events, int buckets, Random random) {
+    int splits = 1 + random.nextInt(3);
+    List<TestingRetentionState> states = new ArrayList<>();
+    for (int i = 0; i < splits; i++) {
+      states.add(new TestingRetentionState());
+    }
+    for (Event event : events) {
+      input(states.get(random.nextInt(splits)), event, buckets);
+    }
+    TestingRetentionState state = states.get(0);
+    for (int i = 1; i < splits; i++) {
+      Retention.combine(state, states.get(i));
+    }
+    if (state.getBuckets() == 0) {
+      // 没有任何输入的分组不会调用 output，这里按没有首次事件处理
+      return new boolean[buckets + 1];
+    }
+    return output(state);
+  }
+
+  private static boolean[] expected(List<Event> events, int buckets) {
+    boolean[] expected = new boolean[buckets + 1];
+    long first = Long.MAX_VALUE;
+    for (Event event : events) {
+      if (event.first) {
+        first = Math.min(first, event.bucket);
+      }
+    }
+    if (first == Long.MAX_VALUE) {
+      return expected;
+    }
+    expected[0] = true;
+    for (Event event : events) {
+      long offset = event.bucket - first;
+      if (event.returned && offset >= 1 && offset <= buckets) {
+        expected[(int) offset] = true;
+      }
+    }
+    return expected;
+  }
+
+  private static void assertLowerBound(boolean[] actual, boolean[] expected) {
+    assertEquals(actual.length, expected.length);
+    assertEquals(actual[0], expected[0]);
+    for (int i = 1; i < actual.length; i++) {
+      assertTrue(!actual[i] || expected[i], "bucket " + i);
+    }
+  }
+
+  private static void input(TestingRetentionState state, Event event, int buckets) {
+    input(state, event.bucket, event.first, event.returned, buckets);
+  }
+
+  private static void input(TestingRetentionState state, long bucket, boolean first, boolean returned, int buckets) {
+    Retention.input(state, bucket, first, returned, 1, buckets);
+  }
+
+  private static boolean[] output(TestingRetentionState state) {
+    BlockBuilder out = BOOLEAN_ARRAY.createBlockBuilder(null, 1);
+    Retention.output(state, out);
+    Block array = (Block) BOOLEAN_ARRAY.getObject(out.build(), 0);
+    boolean[] result = new boolean[array.getPositionCount()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = BOOLEAN.getBoolean(array, i);
+    }
+    return result;
+  }
+
+  private static class Event {
+    private final long bucket;
+    private final boolean first;
+    private final boolean returned;
+
+    Event(long bucket, boolean first, boolean returned) {
+      this.bucket = bucket;
+      this.first = first;
+      this.returned = returned;
+    }
+  }
+
+  private static class TestingRetentionState
+      implements RetentionState {
+    private int buckets;
+    private boolean anchorSet;
+    private boolean firstSeen;
+    private long anchor;
+    private long bits;
+
+    @Override
+    public int getBuckets() {
+      return buckets;
+    }
+
+    @Override
+    public void setBuckets(int value) {
+      buckets = value;
+    }
+
+    @Override
+    public boolean isAnchorSet() {
+      return anchorSet;
+    }
+
+    @Override
+    public void setAnchorSet(boolean value) {
+      anchorSet = value;
+    }
+
+    @Override
+    public boolean isFirstSeen() {
+      return firstSeen;
+    }
+
+    @Override
+    public void setFirstSeen(boolean value) {
+      firstSeen = value;
+    }
+
+    @Override
+    public long getAnchor() {
+      return anchor;
+    }
+
+    @Override
+    public void setAnchor(long value) {
+      anchor = value;
+    }
+
+    @Override
+    public long getBits() {
+      return bits;
+    }
+
+    @Override
+    public void setBits(long value) {
+      bits = value;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return 0;
+    }
+  }
+}
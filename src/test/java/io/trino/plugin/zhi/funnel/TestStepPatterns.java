@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.funnel;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.testng.annotations.Test;
+
+public class TestStepPatterns {
+  @Test
+  public void testPrefixOverlapsSuffix() {
+    // 前缀 ab 和后缀 ba 不能共用 aba 中间的 b
+    StepPatterns patterns = compile("ab%ba");
+    assertEquals(indexOf(patterns, "aba"), -1);
+    assertEquals(indexOf(patterns, "abba"), 0);
+    assertEquals(indexOf(patterns, "abxba"), 0);
+    assertEquals(indexOf(patterns, "ab"), -1);
+  }
+
+  @Test
+  public void testInnerSegments() {
+    StepPatterns patterns = compile("a%b%c%d");
+    assertEquals(indexOf(patterns, "abcd"), 0);
+    assertEquals(indexOf(patterns, "axxbyycd"), 0);
+    assertEquals(indexOf(patterns, "acbd"), -1);
+    // 中间片段不能占用后缀的字节
+    assertEquals(indexOf(patterns, "abd"), -1);
+    assertEquals(indexOf(compile("a%bc%c"), "abc"), -1);
+    assertEquals(indexOf(compile("a%bc%c"), "abcc"), 0);
+  }
+
+  @Test
+  public void testEscapes() {
+    assertFalse(StepPatterns.isPattern(Slices.utf8Slice("100\\%")));
+    assertEquals(StepPatterns.unescape(Slices.utf8Slice("100\\%")).toStringUtf8(), "100%");
+    assertEquals(StepPatterns.unescape(Slices.utf8Slice("a\\\\b")).toStringUtf8(), "a\\b");
+    // 其它反斜杠保持原样
+    assertEquals(StepPatterns.unescape(Slices.utf8Slice("a\\b")).toStringUtf8(), "a\\b");
+
+    // `\\%` 是反斜杠加通配符
+    assertTrue(StepPatterns.isPattern(Slices.utf8Slice("a\\\\%")));
+    StepPatterns patterns = compile("off\\%%", "a\\\\%");
+    assertEquals(indexOf(patterns, "off%50"), 0);
+    assertEquals(indexOf(patterns, "off50"), -1);
+    assertEquals(indexOf(patterns, "a\\x"), 1);
+    assertEquals(indexOf(patterns, "ax"), -1);
+  }
+
+  @Test
+  public void testLeadingWildcard() {
+    StepPatterns patterns = compile("%/pay", "%");
+    assertEquals(indexOf(patterns, "pages/order/pay"), 0);
+    assertEquals(indexOf(patterns, "/pay"), 0);
+    assertEquals(indexOf(patterns, "pages/home"), 1);
+    assertEquals(indexOf(patterns, ""), 1);
+  }
+
+  @Test
+  public void testPrecedence() {
+    // 普通事件名优先于通配符，其次前缀更长的模式优先，最后按定义顺序
+    FunnelSteps steps = FunnelSteps.of(Slices.utf8Slice("pages/%,pages/order/%,%/pay,pages/order/pay,pages/%"));
+    assertEquals(steps.indexOf(Slices.utf8Slice("pages/order/pay")), 3);
+    assertEquals(steps.indexOf(Slices.utf8Slice("pages/order/list")), 1);
+    assertEquals(steps.indexOf(Slices.utf8Slice("pages/home")), 0);
+    assertEquals(steps.indexOf(Slices.utf8Slice("cart/pay")), 2);
+    assertEquals(steps.indexOf(Slices.utf8Slice("cart")), -1);
+  }
+
+  @Test
+  public void testMatchesRegex() {
+    Random random = new Random(1);
+    for (int iteration = 0; iteration < 2_000; iteration++) {
+      List<String> definitions = new ArrayList<>();
+      int count = 1 + random.nextInt(5);
+      for (int i = 0; i < count; i++) {
+        String pattern = randomString(random, "ab%", 6);
+        definitions.add(pattern.indexOf('%') < 0 ? pattern + "%" : pattern);
+      }
+      StepPatterns patterns = compile(definitions.toArray(new String[0]));
+      for (int i = 0; i < 50; i++) {
+        String event = randomString(random, "ab", 8);
+        assertEquals(indexOf(patterns, event), expected(definitions, event), definitions + " " + event);
+      }
+    }
+  }
+
+  // 匹配的模式中前缀最长的，前缀一样长时取定义顺序靠前的
+  private static int expected(List<String> definitions, String event) {
+    int result = -1;
+    int longest = -1;
+    for (int i = 0; i < definitions.size(); i++) {
+      String definition = definitions.get(i);
+      int prefix = definition.indexOf('%');
+      String regex = Pattern.quote(definition).replace("%", "\\E.*\\Q");
+      if (prefix > longest && Pattern.compile(regex, Pattern.DOTALL).matcher(event).matches()) {
+        result = i;
+        longest = prefix;
+      }
+    }
+    return result;
+  }
+
+  private static String randomString(Random random, String alphabet, int maxLength) {
+    StringBuilder builder = new StringBuilder();
+    int length = random.nextInt(maxLength + 1);
+    for (int i = 0; i < length; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+
+  private static StepPatterns compile(String... definitions) {
+    List<Slice> patterns = new ArrayList<>();
+    List<Integer> steps = new ArrayList<>();
+    for (int i = 0; i < definitions.length; i++) {
+      patterns.add(Slices.utf8Slice(definitions[i]));
+      steps.add(i);
+    }
+    return StepPatterns.compile(patterns, steps);
+  }
+
+  private static int indexOf(StepPatterns patterns, String event) {
+    return patterns.indexOf(Slices.utf8Slice(event));
+  }
+}
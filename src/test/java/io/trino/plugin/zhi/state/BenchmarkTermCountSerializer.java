@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 对比 word_count 部分状态的两种交换格式的吞吐量：
+ * 原来的 {@link StringListSerializer}（所有词的 JSON 列表）和 {@link TermCountSerializer}（二进制词典）。
+ * 每轮都完整地序列化一次再反序列化回状态，语料为按幂律分布生成的词。
+ * <pre>
+ * java -cp ... io.trino.plugin.zhi.state.BenchmarkTermCountSerializer [tokens] [distinct]
+ * </pre>
+ */
+public final class BenchmarkTermCountSerializer {
+  private static final int WARMUP_ROUNDS = 20;
+  private static final int MEASURE_ROUNDS = 50;
+
+  private BenchmarkTermCountSerializer() {
+  }
+
+  public static void main(String[] args) {
+    int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    List<String> corpus = corpus(tokens, distinct, new Random(0));
+
+    TestingStringListState list = new TestingStringListState();
+    list.getList().addAll(corpus);
+    TermCounts counts = new TermCounts();
+    for (String term : corpus) {
+      counts.add(Slices.utf8Slice(term), 1);
+    }
+    TestTermCountSerializer.TestingTermCountState state = new TestTermCountSerializer.TestingTermCountState();
+    state.set(counts);
+
+    System.out.printf("corpus: %d tokens, %d distinct terms%n", tokens, counts.size());
+    report("json (StringListSerializer)", () -> jsonRoundTrip(list));
+    report("binary (TermCountSerializer)", () -> binaryRoundTrip(state));
+  }
+
+  private static long jsonRoundTrip(TestingStringListState state) {
+    StringListSerializer serializer = new StringListSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    serializer.serialize(state, out);
+    Block block = out.build();
+    TestingStringListState deserialized = new TestingStringListState();
+    serializer.deserialize(block, 0, deserialized);
+    return VARBINARY.getSlice(block, 0).length();
+  }
+
+  private static long binaryRoundTrip(TermCountState state) {
+    TermCountSerializer serializer = new TermCountSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    serializer.serialize(state, out);
+    Block block = out.build();
+    serializer.deserialize(block, 0, new TestTermCountSerializer.TestingTermCountState());
+    return VARBINARY.getSlice(block, 0).length();
+  }
+
+  private static void report(String name, RoundTrip roundTrip) {
+    long bytes = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      bytes = roundTrip.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURE_ROUNDS; i++) {
+      roundTrip.run();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%-30s %10.1f round trips/s %12d bytes%n", name, MEASURE_ROUNDS / seconds, bytes);
+  }
+
+  static List<String> corpus(int tokens, int distinct, Random random) {
+    List<String> corpus = new ArrayList<>(tokens);
+    for (int i = 0; i < tokens; i++) {
+      // 幂律分布：少数高频词加上大量低频词
+      int term = (int) (distinct * Math.pow(random.nextDouble(), 3));
+      corpus.add("词" + term + (term % 3 == 0 ? "/n" : "/v"));
+    }
+    return corpus;
+  }
+
+  private interface RoundTrip {
+    long run();
+  }
+
+  private static class TestingStringListState
+      implements StringListState {
+    private final List<String> list = new ArrayList<>();
+
+    @Override
+    public void addMemoryUsage(int memory) {
+    }
+
+    @Override
+    public List<String> getList() {
+      return list;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return 0;
+    }
+  }
+}
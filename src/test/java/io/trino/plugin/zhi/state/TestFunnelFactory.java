@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import io.trino.plugin.zhi.state.FunnelFactory.GroupedFunnelState;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+public class TestFunnelFactory {
+  @Test
+  public void testGrow() {
+    GroupedFunnelState state = createState(2);
+    // 两个分组交替追加，每次扩容都要搬到新的区间
+    for (int i = 0; i < 100; i++) {
+      state.setGroupId(0);
+      state.add(FunnelEvents.encode(i, 0));
+      state.setGroupId(1);
+      state.add(FunnelEvents.encode(1000 - i, 1));
+    }
+
+    state.setGroupId(0);
+    assertEquals(state.size(), 100);
+    assertTrue(state.isSorted());
+    assertEquals(state.getLastEvent(), FunnelEvents.encode(99, 0));
+    long[] events = state.getEvents();
+    for (int i = 0; i < 100; i++) {
+      assertEquals(events[i], FunnelEvents.encode(i, 0));
+    }
+
+    state.setGroupId(1);
+    assertEquals(state.size(), 100);
+    assertFalse(state.isSorted());
+    state.sort();
+    assertTrue(state.isSorted());
+    events = state.getEvents();
+    for (int i = 0; i < 100; i++) {
+      assertEquals(events[i], FunnelEvents.encode(901 + i, 1));
+    }
+  }
+
+  @Test
+  public void testSegmentReuseAfterClear() throws ReflectiveOperationException {
+    GroupedFunnelState state = createState(2);
+    state.setGroupId(0);
+    state.init(100, 3, 0);
+    for (int i = 0; i < 8; i++) {
+      state.add(FunnelEvents.encode(i, 0));
+    }
+    long slabSize = slabSize(state);
+    state.clear();
+    assertEquals(state.size(), 0);
+    assertFalse(state.isNull());
+
+    // 同样大小的区间直接复用释放的区间，不再扩大共享数组
+    state.setGroupId(1);
+    for (int i = 0; i < 8; i++) {
+      state.add(FunnelEvents.encode(50 + i, 2));
+    }
+    assertEquals(slabSize(state), slabSize);
+    long[] events = state.getEvents();
+    for (int i = 0; i < 8; i++) {
+      assertEquals(events[i], FunnelEvents.encode(50 + i, 2));
+    }
+
+    state.setGroupId(0);
+    state.add(FunnelEvents.encode(7, 1));
+    assertEquals(state.size(), 1);
+    assertEquals(state.getLastEvent(), FunnelEvents.encode(7, 1));
+    state.setGroupId(1);
+    assertEquals(state.getEvents()[0], FunnelEvents.encode(50, 2));
+  }
+
+  @Test
+  public void testRandomOperations() {
+    int groups = 20;
+    Random random = new Random(1);
+    GroupedFunnelState state = createState(groups);
+    List<List<Long>> expected = new ArrayList<>();
+    for (int i = 0; i < groups; i++) {
+      expected.add(new ArrayList<>());
+    }
+
+    for (int iteration = 0; iteration < 50_000; iteration++) {
+      int group = random.nextInt(groups);
+      state.setGroupId(group);
+      List<Long> events = expected.get(group);
+      int operation = random.nextInt(100);
+      if (operation < 85) {
+        long event = FunnelEvents.encode(random.nextInt(1000), random.nextInt(4));
+        state.add(event);
+        events.add(event);
+      } else if (operation < 90) {
+        state.clear();
+        events.clear();
+      } else if (operation < 95) {
+        // 模拟压缩：保留排序后的前一半
+        state.sort();
+        long[] sorted = Arrays.copyOf(state.getEvents(), state.size() / 2);
+        state.setSortedEvents(sorted, sorted.length);
+        events.sort(null);
+        events.subList(sorted.length, events.size()).clear();
+      } else {
+        state.sort();
+        events.sort(null);
+      }
+      assertEvents(state, events);
+    }
+    for (int group = 0; group < groups; group++) {
+      state.setGroupId(group);
+      assertEvents(state, expected.get(group));
+    }
+  }
+
+  @Test
+  public void testSerializeRoundTrip() {
+    GroupedFunnelState state = createState(3);
+    state.setGroupId(0);
+    state.init(3600, 4, 0);
+    state.setDepth(2);
+    state.add(FunnelEvents.encode(500, 3));
+    state.add(FunnelEvents.encode(-20, 0));
+    state.add(FunnelEvents.encode(100, 1));
+    state.setGroupId(1);
+    state.init(60, 2, 3);
+    // 分组 2 没有输入
+
+    FunnelSerializer serializer = new FunnelSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 3);
+    for (int group = 0; group < 3; group++) {
+      state.setGroupId(group);
+      serializer.serialize(state, out);
+    }
+    Block block = out.build();
+    assertTrue(block.isNull(2));
+
+    // 反序列化到另一个状态的不同分组中
+    GroupedFunnelState deserialized = createState(6);
+    for (int group = 0; group < 3; group++) {
+      deserialized.setGroupId(5 - group);
+      serializer.deserialize(block, group, deserialized);
+    }
+
+    deserialized.setGroupId(5);
+    assertEquals(deserialized.getWindow(), 3600);
+    assertEquals(deserialized.getStepCount(), 4);
+    assertEquals(deserialized.getMode(), 0);
+    assertEquals(deserialized.getDepth(), 2);
+    assertTrue(deserialized.isSorted());
+    assertEquals(Arrays.copyOf(deserialized.getEvents(), deserialized.size()), new long[] {
+        FunnelEvents.encode(-20, 0), FunnelEvents.encode(100, 1), FunnelEvents.encode(500, 3)});
+
+    deserialized.setGroupId(4);
+    assertEquals(deserialized.getWindow(), 60);
+    assertEquals(deserialized.getStepCount(), 2);
+    assertEquals(deserialized.getMode(), 3);
+    assertEquals(deserialized.size(), 0);
+
+    deserialized.setGroupId(3);
+    assertTrue(deserialized.isNull());
+  }
+
+  private static GroupedFunnelState createState(int groups) {
+    GroupedFunnelState state = (GroupedFunnelState) new FunnelFactory().createGroupedState();
+    state.ensureCapacity(groups);
+    return state;
+  }
+
+  private static void assertEvents(GroupedFunnelState state, List<Long> expected) {
+    assertEquals(state.size(), expected.size());
+    long[] events = state.getEvents();
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(events[i], (long) expected.get(i));
+    }
+  }
+
+  private static long slabSize(GroupedFunnelState state) throws ReflectiveOperationException {
+    Field field = GroupedFunnelState.class.getDeclaredField("slabSize");
+    field.setAccessible(true);
+    return field.getLong(state);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.trino.plugin.zhi.state.FunnelMergeFactory.GroupedFunnelMergeState;
+import org.testng.annotations.Test;
+
+public class TestFunnelMergeFactory {
+  @Test
+  public void testGroupsAreIndependent() {
+    GroupedFunnelMergeState state = (GroupedFunnelMergeState) new FunnelMergeFactory().createGroupedState();
+    state.ensureCapacity(3);
+    state.setGroupId(0);
+    state.add(3, 5);
+    state.add(1, 2);
+    long sizeBefore = state.getEstimatedSize();
+
+    // 一个分组出现很深的漏斗只扩容它自己的直方图
+    state.setGroupId(1);
+    state.add(200, 1);
+    assertTrue(state.getEstimatedSize() - sizeBefore < 200 * Long.BYTES * 2);
+    state.add(2, 4);
+
+    state.setGroupId(0);
+    assertEquals(state.getMaxDepth(), 3);
+    assertEquals(state.getCount(1), 2);
+    assertEquals(state.getCount(2), 0);
+    assertEquals(state.getCount(3), 5);
+    assertEquals(state.getCount(200), 0);
+
+    state.setGroupId(1);
+    assertEquals(state.getMaxDepth(), 200);
+    assertEquals(state.getCount(2), 4);
+    assertEquals(state.getCount(200), 1);
+
+    state.setGroupId(2);
+    assertEquals(state.getMaxDepth(), 0);
+    assertEquals(state.getCount(1), 0);
+  }
+}
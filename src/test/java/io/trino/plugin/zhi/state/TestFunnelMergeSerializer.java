@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+import static org.testng.Assert.assertEquals;
+
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import org.testng.annotations.Test;
+
+public class TestFunnelMergeSerializer {
+  @Test
+  public void testDeserializeIntoReusedState() {
+    FunnelMergeFactory factory = new FunnelMergeFactory();
+    FunnelMergeState first = factory.createSingleState();
+    first.add(1, 5);
+    first.add(3, 2);
+    FunnelMergeState second = factory.createSingleState();
+    second.add(2, 7);
+    // retention_merge 中末尾的次数可以为 0
+    second.add(4, 0);
+
+    FunnelMergeSerializer serializer = new FunnelMergeSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 2);
+    serializer.serialize(first, out);
+    serializer.serialize(second, out);
+    Block block = out.build();
+
+    // 和 Trino 合并中间结果时一样，每个位置都反序列化到同一个临时状态中
+    FunnelMergeState scratch = factory.createSingleState();
+    serializer.deserialize(block, 0, scratch);
+    assertEquals(scratch.getMaxDepth(), 3);
+    assertEquals(scratch.getCount(1), 5);
+    assertEquals(scratch.getCount(3), 2);
+
+    serializer.deserialize(block, 1, scratch);
+    assertEquals(scratch.getMaxDepth(), 4);
+    assertEquals(scratch.getCount(1), 0);
+    assertEquals(scratch.getCount(2), 7);
+    assertEquals(scratch.getCount(3), 0);
+    assertEquals(scratch.getCount(4), 0);
+
+    scratch.add(6, 1);
+    assertEquals(scratch.getMaxDepth(), 6);
+    assertEquals(scratch.getCount(2), 7);
+  }
+
+  @Test
+  public void testDeserializeIntoReusedGroup() {
+    FunnelMergeFactory factory = new FunnelMergeFactory();
+    FunnelMergeState source = factory.createSingleState();
+    source.add(2, 3);
+    FunnelMergeSerializer serializer = new FunnelMergeSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    serializer.serialize(source, out);
+    Block block = out.build();
+
+    FunnelMergeFactory.GroupedFunnelMergeState grouped =
+        (FunnelMergeFactory.GroupedFunnelMergeState) factory.createGroupedState();
+    grouped.ensureCapacity(1);
+    grouped.setGroupId(0);
+    serializer.deserialize(block, 0, grouped);
+    serializer.deserialize(block, 0, grouped);
+    assertEquals(grouped.getMaxDepth(), 2);
+    assertEquals(grouped.getCount(2), 3);
+    grouped.add(5, 1);
+    assertEquals(grouped.getCount(2), 3);
+    assertEquals(grouped.getCount(5), 1);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.util.Arrays;
+import org.testng.annotations.Test;
+
+public class TestFunnelSerializer {
+  @Test
+  public void testDeserializeIntoReusedState() {
+    FunnelFactory factory = new FunnelFactory();
+    FunnelState first = factory.createSingleState();
+    first.init(100, 3, 0);
+    first.setDepth(2);
+    first.add(FunnelEvents.encode(0, 0));
+    first.add(FunnelEvents.encode(10, 1));
+    FunnelState second = factory.createSingleState();
+    second.init(100, 3, 0);
+    second.add(FunnelEvents.encode(50, 2));
+
+    FunnelSerializer serializer = new FunnelSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 2);
+    serializer.serialize(first, out);
+    serializer.serialize(second, out);
+    Block block = out.build();
+
+    // 和 Trino 合并中间结果时一样，每个位置都反序列化到同一个临时状态中
+    FunnelState scratch = factory.createSingleState();
+    serializer.deserialize(block, 0, scratch);
+    assertEquals(events(scratch), new long[] {FunnelEvents.encode(0, 0), FunnelEvents.encode(10, 1)});
+    assertEquals(scratch.getDepth(), 2);
+    scratch.add(FunnelEvents.encode(5, 2));
+
+    serializer.deserialize(block, 1, scratch);
+    assertEquals(events(scratch), new long[] {FunnelEvents.encode(50, 2)});
+    assertEquals(scratch.getDepth(), 0);
+    assertTrue(scratch.isSorted());
+  }
+
+  @Test
+  public void testDeserializeIntoReusedGroup() {
+    FunnelFactory factory = new FunnelFactory();
+    FunnelState source = factory.createSingleState();
+    source.init(100, 3, 0);
+    source.add(FunnelEvents.encode(1, 0));
+    FunnelSerializer serializer = new FunnelSerializer();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    serializer.serialize(source, out);
+    Block block = out.build();
+
+    FunnelFactory.GroupedFunnelState grouped = (FunnelFactory.GroupedFunnelState) factory.createGroupedState();
+    grouped.ensureCapacity(1);
+    grouped.setGroupId(0);
+    serializer.deserialize(block, 0, grouped);
+    serializer.deserialize(block, 0, grouped);
+    assertEquals(events(grouped), new long[] {FunnelEvents.encode(1, 0)});
+  }
+
+  private static long[] events(FunnelState state) {
+    return Arrays.copyOf(state.getEvents(), state.size());
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+public class TestTermCountSerializer {
+  @Test
+  public void testRoundTrip() {
+    Random random = new Random(1);
+    TermCounts counts = new TermCounts();
+    Map<String, Long> expected = new HashMap<>();
+    for (int i = 0; i < 50_000; i++) {
+      String term = "词" + (int) Math.pow(random.nextInt(3000), 1.5) + "/n";
+      long count = 1 + random.nextInt(1 << random.nextInt(30));
+      counts.add(Slices.utf8Slice(term), count);
+      expected.merge(term, count, Long::sum);
+    }
+
+    TermCounts actual = roundTrip(counts);
+    assertEquals(actual.size(), expected.size());
+    Map<String, Long> values = new HashMap<>();
+    for (int i = 0; i < actual.size(); i++) {
+      values.put(actual.getTerm(i).toStringUtf8(), actual.getCount(i));
+    }
+    assertEquals(values, expected);
+  }
+
+  @Test
+  public void testDeserializedStateKeepsCounting() {
+    TermCounts counts = new TermCounts();
+    counts.add(Slices.utf8Slice("好/a"), 2);
+    counts.add(Slices.utf8Slice("文章/n"), 1);
+
+    TermCounts actual = roundTrip(counts);
+    actual.add(Slices.utf8Slice("好/a"), 3);
+    actual.add(Slices.utf8Slice("价格/n"), 1);
+    assertEquals(actual.size(), 3);
+    assertEquals(actual.getCount(0), 5);
+    assertEquals(actual.getTerm(2).toStringUtf8(), "价格/n");
+  }
+
+  @Test
+  public void testEmptyAndNull() {
+    assertEquals(roundTrip(new TermCounts()).size(), 0);
+
+    TestingTermCountState state = new TestingTermCountState();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    new TermCountSerializer().serialize(state, out);
+    Block block = out.build();
+    assertTrue(block.isNull(0));
+    TestingTermCountState deserialized = new TestingTermCountState();
+    new TermCountSerializer().deserialize(block, 0, deserialized);
+    assertNull(deserialized.get());
+  }
+
+  static TermCounts roundTrip(TermCounts counts) {
+    TestingTermCountState state = new TestingTermCountState();
+    state.set(counts);
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    new TermCountSerializer().serialize(state, out);
+    TestingTermCountState deserialized = new TestingTermCountState();
+    new TermCountSerializer().deserialize(out.build(), 0, deserialized);
+    return deserialized.get();
+  }
+
+  static class TestingTermCountState
+      implements TermCountState {
+    private TermCounts counts;
+
+    @Override
+    public TermCounts get() {
+      return counts;
+    }
+
+    @Override
+    public void set(TermCounts counts) {
+      this.counts = counts;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return 0;
+    }
+  }
+}
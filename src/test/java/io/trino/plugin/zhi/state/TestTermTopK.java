@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.state;
+
+import static io.trino.spi.type.VarbinaryType.VARBINARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.block.Block;
+import io.trino.spi.block.BlockBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+public class TestTermTopK {
+  @Test
+  public void testExactWhenNotFull() {
+    TermTopK summary = new TermTopK(20);
+    Map<String, Long> expected = new HashMap<>();
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      String term = "词" + random.nextInt(10);
+      summary.add(Slices.utf8Slice(term));
+      expected.merge(term, 1L, Long::sum);
+    }
+    assertEquals(summary.size(), expected.size());
+    for (int i = 0; i < summary.size(); i++) {
+      assertEquals(summary.getCount(i), (long) expected.get(summary.getTerm(i).toStringUtf8()));
+      assertEquals(summary.getError(i), 0);
+    }
+    assertEquals(summary.estimate(Slices.utf8Slice("其它")), 0);
+  }
+
+  @Test
+  public void testSkewedStream() {
+    int capacity = 100;
+    int total = 200_000;
+    Random random = new Random(2);
+    double[] zipf = zipf(5000, 1.2);
+    TermTopK summary = new TermTopK(capacity);
+    Map<String, Long> exact = new HashMap<>();
+    for (int i = 0; i < total; i++) {
+      String term = zipfTerm(random, zipf);
+      summary.add(Slices.utf8Slice(term));
+      exact.merge(term, 1L, Long::sum);
+    }
+    assertBounds(summary, exact, total);
+
+    // 服从 Zipf 分布时，摘要中计数最大的 10 个词就是真实的前 10 个词
+    List<String> expectedTop = new ArrayList<>(exact.keySet());
+    expectedTop.sort((left, right) -> Long.compare(exact.get(right), exact.get(left)));
+    int[] order = summary.orderByCount();
+    Set<String> actualTop = new HashSet<>();
+    for (int i = 0; i < 10; i++) {
+      actualTop.add(summary.getTerm(order[i]).toStringUtf8());
+    }
+    assertEquals(actualTop, new HashSet<>(expectedTop.subList(0, 10)));
+  }
+
+  @Test
+  public void testBoundsAfterAddAll() {
+    Random random = new Random(3);
+    for (int iteration = 0; iteration < 300; iteration++) {
+      int capacity = 1 + random.nextInt(50);
+      int parts = 1 + random.nextInt(6);
+      Map<String, Long> exact = new HashMap<>();
+      long total = 0;
+      TermTopK merged = null;
+      for (int part = 0; part < parts; part++) {
+        TermTopK summary = new TermTopK(capacity);
+        int count = random.nextInt(3000);
+        for (int i = 0; i < count; i++) {
+          String term = skewedTerm(random, 400);
+          summary.add(Slices.utf8Slice(term));
+          exact.merge(term, 1L, Long::sum);
+          total++;
+        }
+        if (random.nextBoolean()) {
+          summary = roundTrip(summary);
+        }
+        if (merged == null) {
+          merged = summary;
+        } else if (random.nextBoolean()) {
+          merged.addAll(summary);
+        } else {
+          summary.addAll(merged);
+          merged = summary;
+        }
+      }
+      // 合并之后继续计数
+      for (int i = 0; i < 2000; i++) {
+        String term = "w" + random.nextInt(300);
+        merged.add(Slices.utf8Slice(term));
+        exact.merge(term, 1L, Long::sum);
+        total++;
+      }
+      assertEquals(merged.size(), Math.min(capacity, exact.size()));
+      assertBounds(merged, exact, total);
+    }
+  }
+
+  @Test
+  public void testSerializerRoundTrip() {
+    TermTopK summary = new TermTopK(20);
+    Random random = new Random(4);
+    for (int i = 0; i < 5000; i++) {
+      summary.add(Slices.utf8Slice(skewedTerm(random, 100)));
+    }
+    TermTopK deserialized = roundTrip(summary);
+    assertEquals(deserialized.getCapacity(), summary.getCapacity());
+    assertEquals(deserialized.size(), summary.size());
+    for (int i = 0; i < summary.size(); i++) {
+      Slice term = summary.getTerm(i);
+      assertEquals(deserialized.getTerm(i), term);
+      assertEquals(deserialized.getCount(i), summary.getCount(i));
+      assertEquals(deserialized.getError(i), summary.getError(i));
+      assertEquals(deserialized.estimate(term), summary.estimate(term));
+    }
+    Slice missing = Slices.utf8Slice("missing");
+    assertEquals(deserialized.estimate(missing), summary.estimate(missing));
+
+    // 反序列化出来的摘要可以继续计数，最小计数的词会被替换
+    for (int i = 0; i < 1000; i++) {
+      deserialized.add(missing);
+    }
+    assertTrue(deserialized.estimate(missing) >= 1000);
+    assertEquals(deserialized.size(), 20);
+  }
+
+  @Test
+  public void testSerializeNull() {
+    TestingTermTopKState state = new TestingTermTopKState();
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    new TermTopKSerializer().serialize(state, out);
+    Block block = out.build();
+    assertTrue(block.isNull(0));
+    TestingTermTopKState deserialized = new TestingTermTopKState();
+    new TermTopKSerializer().deserialize(block, 0, deserialized);
+    assertNull(deserialized.get());
+  }
+
+  // 每个词 count - error <= 真实次数 <= count，误差不超过 total / capacity，真实次数超过 total / capacity 的词一定在摘要中
+  private static void assertBounds(TermTopK summary, Map<String, Long> exact, long total) {
+    Set<String> terms = new HashSet<>();
+    for (int i = 0; i < summary.size(); i++) {
+      String term = summary.getTerm(i).toStringUtf8();
+      assertTrue(terms.add(term), term);
+      long count = summary.getCount(i);
+      long error = summary.getError(i);
+      long trueCount = exact.getOrDefault(term, 0L);
+      assertTrue(count - error <= trueCount && trueCount <= count,
+          term + ": count " + count + ", error " + error + ", true " + trueCount);
+      assertTrue(error * summary.getCapacity() <= total, term + ": error " + error);
+    }
+    for (Map.Entry<String, Long> entry : exact.entrySet()) {
+      if (entry.getValue() * summary.getCapacity() > total) {
+        assertTrue(terms.contains(entry.getKey()), entry.getKey());
+      }
+    }
+  }
+
+  // Zipf 分布的累积概率，第 k 个词的概率和 1 / (k + 1)^exponent 成正比
+  private static double[] zipf(int distinct, double exponent) {
+    double[] cumulative = new double[distinct];
+    double sum = 0;
+    for (int k = 0; k < distinct; k++) {
+      sum += 1 / Math.pow(k + 1, exponent);
+      cumulative[k] = sum;
+    }
+    for (int k = 0; k < distinct; k++) {
+      cumulative[k] /= sum;
+    }
+    return cumulative;
+  }
+
+  private static String zipfTerm(Random random, double[] cumulative) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return "w" + (index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1));
+  }
+
+  private static String skewedTerm(Random random, int distinct) {
+    return "w" + (int) (distinct * Math.pow(random.nextDouble(), 4));
+  }
+
+  private static TermTopK roundTrip(TermTopK summary) {
+    TestingTermTopKState state = new TestingTermTopKState();
+    state.set(summary);
+    BlockBuilder out = VARBINARY.createBlockBuilder(null, 1);
+    new TermTopKSerializer().serialize(state, out);
+    TestingTermTopKState deserialized = new TestingTermTopKState();
+    new TermTopKSerializer().deserialize(out.build(), 0, deserialized);
+    return deserialized.get();
+  }
+
+  private static class TestingTermTopKState
+      implements TermTopKState {
+    private TermTopK summary;
+
+    @Override
+    public TermTopK get() {
+      return summary;
+    }
+
+    @Override
+    public void set(TermTopK summary) {
+      this.summary = summary;
+    }
+
+    @Override
+    public void addMemoryUsage(long memory) {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.ansj.domain.Result;
+
+/**
+ * 在固定语料上测量每种 {@link SegmentMode} 的分词吞吐量，
+ * 用来判断批量统计时从默认的 nlp 切换到 to 或 base 能省多少时间。
+ * <pre>
+ * java -cp ... io.trino.plugin.zhi.word.BenchmarkSegmentMode [documents] [rounds]
+ * </pre>
+ */
+public final class BenchmarkSegmentMode {
+  private static final String[] SENTENCES = {
+      "这家餐厅的菜味道不错，价格也比较实惠，服务员态度很好。",
+      "快递第二天就到了，包装完好，手机运行流畅，电池续航一般。",
+      "北京市海淀区的交通早晚高峰非常拥堵，建议乘坐地铁出行。",
+      "新版本修复了登录失败的问题，但是页面加载速度明显变慢了。",
+      "房间干净整洁，离火车站很近，早餐种类少了一点。",
+      "客服回复及时，退款流程简单，下次还会在这家店购买。",
+      "这部电影的剧情节奏紧凑，演员表演自然，结尾有些仓促。",
+      "孩子很喜欢这套绘本，插图精美，文字适合睡前阅读。",
+  };
+
+  private BenchmarkSegmentMode() {
+  }
+
+  public static void main(String[] args) {
+    int documents = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    List<String> corpus = corpus(documents, new Random(0));
+    long chars = 0;
+    for (String document : corpus) {
+      chars += document.length();
+    }
+    System.out.printf("corpus: %d documents, %d chars%n", documents, chars);
+
+    for (SegmentMode mode : SegmentMode.values()) {
+      // 第一次调用会加载词典和模型，不计入时间
+      segment(mode, corpus);
+      long terms = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        terms += segment(mode, corpus);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%-6s %12.0f chars/s %12.0f terms/s%n",
+          mode.name().toLowerCase(), chars * rounds / seconds, terms / seconds);
+    }
+  }
+
+  private static long segment(SegmentMode mode, List<String> corpus) {
+    long terms = 0;
+    for (String document : corpus) {
+      Result result = mode.segment(document);
+      terms += result.getTerms().size();
+    }
+    return terms;
+  }
+
+  // 每篇文档由 1 到 4 个句子随机拼成，种子固定保证每次运行的语料相同
+  static List<String> corpus(int documents, Random random) {
+    List<String> corpus = new ArrayList<>(documents);
+    for (int i = 0; i < documents; i++) {
+      StringBuilder document = new StringBuilder();
+      int sentences = 1 + random.nextInt(4);
+      for (int j = 0; j < sentences; j++) {
+        document.append(SENTENCES[random.nextInt(SENTENCES.length)]);
+      }
+      corpus.add(document.toString());
+    }
+    return corpus;
+  }
+}
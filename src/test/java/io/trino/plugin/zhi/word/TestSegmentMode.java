@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.trino.plugin.zhi.word;
+
+import static org.testng.Assert.assertEquals;
+
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+import org.testng.annotations.Test;
+
+public class TestSegmentMode {
+  @Test
+  public void testParse() {
+    assertEquals(SegmentMode.parse(Slices.utf8Slice("base")), SegmentMode.BASE);
+    assertEquals(SegmentMode.parse(Slices.utf8Slice("to")), SegmentMode.TO);
+    assertEquals(SegmentMode.parse(Slices.utf8Slice("dic")), SegmentMode.DIC);
+    assertEquals(SegmentMode.parse(Slices.utf8Slice("index")), SegmentMode.INDEX);
+    assertEquals(SegmentMode.parse(Slices.utf8Slice("nlp")), SegmentMode.NLP);
+  }
+
+  @Test(expectedExceptions = TrinoException.class)
+  public void testUnknownMode() {
+    SegmentMode.parse(Slices.utf8Slice("NLP"));
+  }
+}